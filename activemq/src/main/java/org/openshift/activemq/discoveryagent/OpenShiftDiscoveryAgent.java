@@ -29,6 +29,7 @@ import org.apache.activemq.command.DiscoveryEvent;
 import org.apache.activemq.thread.Scheduler;
 import org.apache.activemq.transport.discovery.DiscoveryAgent;
 import org.apache.activemq.transport.discovery.DiscoveryListener;
+import org.openshift.ping.common.AdaptiveInterval;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,15 +40,19 @@ import org.slf4j.LoggerFactory;
  * using an openwire (tcp) transport. The URI takes the form:
  * 
  * <pre>
- * (dns|kube)://<serviceName>:<servicePort>/?queryInterval=30&transportType=tcp
+ * (dns|kube)://<serviceName>:<servicePort>/?queryInterval=30&minQueryInterval=5&transportType=tcp
  * </pre>
  * 
  * <code>serviceName</code> is required and is the name of the service.
  * <code>servicePort</code> is optional. If not specified, the agent will query
  * to determine the port on which the services are running.
- * <code>queryInterval</code> is the period, in seconds, at which polling is
- * conducted; the default is 30s. <code>transportType</code> is the type of
- * transport; the default is <code>tcp</code>.
+ * <code>queryInterval</code> is the longest period, in seconds, at which polling is
+ * conducted; the default is 30s. <code>minQueryInterval</code> is the shortest
+ * period, in seconds; the default is 5s. Polling starts at the shortest period,
+ * which doubles with each poll that finds the services unchanged, up to the
+ * longest, and drops back as soon as a poll finds them changed.
+ * <code>transportType</code> is the type of transport; the default is
+ * <code>tcp</code>.
  */
 public class OpenShiftDiscoveryAgent implements DiscoveryAgent {
 
@@ -55,6 +60,10 @@ public class OpenShiftDiscoveryAgent implements DiscoveryAgent {
 
     /** The query interval in seconds. */
     private long queryInterval = 30;
+    /** The query interval in seconds while the services change. */
+    private long minQueryInterval = 5;
+    /** The current query interval, following the changes of the services. */
+    private volatile AdaptiveInterval currentQueryInterval;
     /** The transportType, e.g. tcp, amqp, etc., defaults to tcp. */
     private PeerAddressResolver resolver;
     private String transportType = "tcp";
@@ -82,7 +91,9 @@ public class OpenShiftDiscoveryAgent implements DiscoveryAgent {
                 transportType);
         openshiftPoller = new Scheduler("OpenShift discovery agent Scheduler: " + resolver.getServiceName());
         openshiftPoller.start();
-        openshiftPoller.executePeriodically(new OpenShiftQueryTask(), TimeUnit.SECONDS.toMillis(queryInterval));
+        currentQueryInterval = new AdaptiveInterval(TimeUnit.SECONDS.toMillis(Math.min(minQueryInterval, queryInterval)),
+                TimeUnit.SECONDS.toMillis(queryInterval));
+        openshiftPoller.executeAfterDelay(new OpenShiftQueryTask(currentQueryInterval), currentQueryInterval.getInterval());
     }
 
     @Override
@@ -129,6 +140,46 @@ public class OpenShiftDiscoveryAgent implements DiscoveryAgent {
         this.queryInterval = queryInterval;
     }
 
+    /**
+     * Get the minQueryInterval.
+     * 
+     * @return the minQueryInterval.
+     */
+    public long getMinQueryInterval() {
+        return minQueryInterval;
+    }
+
+    /**
+     * Set the minQueryInterval.
+     * 
+     * @param minQueryInterval The minQueryInterval to set.
+     */
+    public void setMinQueryInterval(long minQueryInterval) {
+        this.minQueryInterval = minQueryInterval;
+    }
+
+    /**
+     * Get the current query interval, which lies between minQueryInterval and
+     * queryInterval.
+     * 
+     * @return the current query interval in milliseconds.
+     */
+    public long getCurrentQueryInterval() {
+        final AdaptiveInterval interval = currentQueryInterval;
+        return interval != null ? interval.getInterval() : 0;
+    }
+
+    /**
+     * Get the change rate, the exponentially weighted share of recent polls
+     * which saw the services change.
+     * 
+     * @return the change rate, between 0 and 1.
+     */
+    public double getChangeRate() {
+        final AdaptiveInterval interval = currentQueryInterval;
+        return interval != null ? interval.getChangeRate() : 0;
+    }
+
     /**
      * Get the transportType.
      * 
@@ -261,14 +312,20 @@ public class OpenShiftDiscoveryAgent implements DiscoveryAgent {
      */
     private class OpenShiftQueryTask implements Runnable {
 
+        private final AdaptiveInterval interval;
+
         /**
          * Create a new OpenShiftQueryTask.
+         * 
+         * @param interval the interval of the polls
          */
-        public OpenShiftQueryTask() {
+        public OpenShiftQueryTask(AdaptiveInterval interval) {
+            this.interval = interval;
         }
 
         @Override
         public void run() {
+            boolean changed = false;
             try {
                 synchronized (services) {
                     final Set<String> endpoints = new HashSet<String>(Arrays.asList(resolver.getPeerIPs()));
@@ -281,6 +338,7 @@ public class OpenShiftDiscoveryAgent implements DiscoveryAgent {
                         if (event != null) {
                             LOGGER.info("Removing service: {}", event);
                             listener.onServiceRemove(event);
+                            changed = true;
                         }
                     }
                     for (Map.Entry<String, OpenShiftDiscoveryEvent> entry : services.entrySet()) {
@@ -296,11 +354,30 @@ public class OpenShiftDiscoveryAgent implements DiscoveryAgent {
                         services.put(service, event);
                         LOGGER.info("Adding service: {}", event);
                         listener.onServiceAdd(event);
+                        changed = true;
                     }
                 }
             } catch (Exception e) {
                 LOGGER.error("Error polling OpenShift", e);
             }
+            reschedule(changed);
+        }
+
+        /**
+         * Polls again after the shortest interval if the services changed,
+         * otherwise after twice the current interval, up to the longest.
+         */
+        private void reschedule(boolean changed) {
+            final long delay = interval.update(changed);
+            synchronized (OpenShiftDiscoveryAgent.this) {
+                if (openshiftPoller != null) {
+                    try {
+                        openshiftPoller.executeAfterDelay(this, delay);
+                    } catch (Exception e) {
+                        // stopped
+                    }
+                }
+            }
         }
 
     }
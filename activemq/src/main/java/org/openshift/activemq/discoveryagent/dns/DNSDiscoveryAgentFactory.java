@@ -25,6 +25,9 @@ import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.util.IntrospectionSupport;
 import org.apache.activemq.util.URISupport;
 import org.openshift.activemq.discoveryagent.OpenShiftDiscoveryAgent;
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+import org.openshift.ping.common.dns.DnsResolvers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,7 +44,8 @@ public class DNSDiscoveryAgentFactory extends DiscoveryAgentFactory {
             LOGGER.info("Creating DNS discovery agent for {}.", uri.toString());
             final Map<String, String> options = URISupport.parseParameters(uri);
             uri = URISupport.removeQuery(uri);
-            final OpenShiftDiscoveryAgent agent = new OpenShiftDiscoveryAgent(new DNSPeerResolver(uri.getHost(), uri.getPort()));
+            final OpenShiftDiscoveryAgent agent = new OpenShiftDiscoveryAgent(
+                    new DNSPeerResolver(uri.getHost(), uri.getPort(), createDNSUtil(options)));
             IntrospectionSupport.setProperties(agent, options);
             return agent;
         } catch (Throwable e) {
@@ -49,4 +53,16 @@ public class DNSDiscoveryAgentFactory extends DiscoveryAgentFactory {
         }
     }
 
+    /**
+     * Removes the resolver options, which are not properties of the agent:
+     * resolver, jdk (the default) or nio to query the nameservers of
+     * /etc/resolv.conf directly, A and AAAA at once; and
+     * preferredAddressFamily, ipv4 or ipv6 for the IPs to list first.
+     */
+    private DNSUtil createDNSUtil(Map<String, String> options) throws Exception {
+        final DnsResolver resolver = DnsResolvers.create(options.remove("resolver"), getClass().getClassLoader());
+        final AddressFamily preferredAddressFamily = AddressFamily.parse(options.remove("preferredAddressFamily"));
+        return new DNSUtil(resolver, preferredAddressFamily);
+    }
+
 }
@@ -40,7 +40,18 @@ public class DNSPeerResolver implements PeerAddressResolver {
      * @param servicePort the service port
      */
     public DNSPeerResolver(String serviceName, int servicePort) {
-        this(serviceName);
+        this(serviceName, servicePort, new DNSUtil());
+    }
+
+    /**
+     * Create a new DNSPeerResolver.
+     * 
+     * @param serviceName the service name
+     * @param servicePort the service port
+     * @param dns the DNS utility to lookup the endpoints with
+     */
+    public DNSPeerResolver(String serviceName, int servicePort, DNSUtil dns) {
+        this(serviceName, dns);
         this.servicePort = servicePort;
     }
 
@@ -50,7 +61,17 @@ public class DNSPeerResolver implements PeerAddressResolver {
      * @param serviceName the service name
      */
     public DNSPeerResolver(String serviceName) {
-        this.dns = new DNSUtil();
+        this(serviceName, new DNSUtil());
+    }
+
+    /**
+     * Create a new DNSPeerResolver.
+     * 
+     * @param serviceName the service name
+     * @param dns the DNS utility to lookup the endpoints with
+     */
+    public DNSPeerResolver(String serviceName, DNSUtil dns) {
+        this.dns = dns;
         this.serviceName = serviceName;
     }
 
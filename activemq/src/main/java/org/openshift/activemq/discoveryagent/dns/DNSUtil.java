@@ -16,18 +16,16 @@
 package org.openshift.activemq.discoveryagent.dns;
 
 import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Hashtable;
 import java.util.List;
 
-import javax.naming.Context;
-import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
 
+import org.openshift.ping.common.SrvLookup;
+import org.openshift.ping.common.SrvRecord;
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+import org.openshift.ping.common.dns.JdkDnsResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,10 +36,32 @@ public class DNSUtil {
 
     private final static Logger LOGGER = LoggerFactory.getLogger(DNSUtil.class);
 
+    /**
+     * The broker does not retry a failed lookup itself, so the queries are
+     * retried 4 times, the wait doubling each time.
+     */
+    private final static SrvLookup SRV_LOOKUP = new SrvLookup(SrvLookup.createDnsEnvironment(2000, 4), 4, 30000);
+
+    private final DnsResolver resolver;
+    private final AddressFamily preferredAddressFamily;
+
     /**
      * Create a new DNSUtil using default DNS server (i.e. dns:)
      */
     public DNSUtil() {
+        this(new JdkDnsResolver(), null);
+    }
+
+    /**
+     * Create a new DNSUtil.
+     * 
+     * @param resolver the resolver to lookup IPs with
+     * @param preferredAddressFamily the family of the IPs to list first, null
+     *            to keep the order of the resolver
+     */
+    public DNSUtil(DnsResolver resolver, AddressFamily preferredAddressFamily) {
+        this.resolver = resolver;
+        this.preferredAddressFamily = preferredAddressFamily;
     }
 
     /**
@@ -56,11 +76,11 @@ public class DNSUtil {
         }
         try {
             List<String> retVal = new ArrayList<String>();
-            for (InetAddress inetAddress : InetAddress.getAllByName(name)) {
+            for (InetAddress inetAddress : AddressFamily.sort(resolver.getAddresses(name), preferredAddressFamily)) {
                 retVal.add(inetAddress.getHostAddress());
             }
             return retVal.toArray(new String[retVal.size()]);
-        } catch (UnknownHostException e) {
+        } catch (Exception e) {
             LOGGER.warn("Could not resolve host: {}", name, e);
             return new String[0];
         }
@@ -76,35 +96,12 @@ public class DNSUtil {
         if (name == null) {
             return null;
         }
-        DirContext ctx = null;
         try {
-            Hashtable<String, String> env = new Hashtable<String, String>();
-            env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
-            env.put(Context.PROVIDER_URL, "dns:");
-            env.put("com.sun.jndi.dns.recursion", "false");
-            // default is one second, but os skydns can be slow
-            env.put("com.sun.jndi.dns.timeout.initial", "2000");
-            env.put("com.sun.jndi.dns.timeout.retries", "4");
-            ctx = new InitialDirContext(env);
-            Attributes attrs = ctx.getAttributes("_tcp." + name, new String[] {"SRV" });
-            if (attrs == null) {
-                return null;
-            }
-            for (NamingEnumeration<?> srvs = attrs.getAll(); srvs.hasMore();) {
-                String srv = srvs.next().toString();
-                String[] fields = srv.split(" ");
-                return fields[2];
+            for (SrvRecord srv : SRV_LOOKUP.lookup("_tcp." + name)) {
+                return String.valueOf(srv.getPort());
             }
         } catch (NamingException e) {
             LOGGER.error("Error retrieving port for service: " + name, e.getMessage());
-        } finally {
-            if (ctx != null) {
-                try {
-                    ctx.close();
-                } catch (NamingException e) {
-                    e.fillInStackTrace();
-                }
-            }
         }
         return null;
     }
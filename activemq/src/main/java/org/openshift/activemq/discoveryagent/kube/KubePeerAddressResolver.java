@@ -27,12 +27,14 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
 import org.jboss.dmr.ModelNode;
 import org.openshift.activemq.discoveryagent.PeerAddressResolver;
+import org.openshift.ping.common.EndpointSlices;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +46,7 @@ public class KubePeerAddressResolver implements PeerAddressResolver {
     private static final Logger LOGGER = LoggerFactory.getLogger(KubePeerAddressResolver.class);
 
     private static final String ENV_AMQ_MESH_SERVICE_NAMESPACE = "AMQ_MESH_SERVICE_NAMESPACE";
+    private static final String ENV_AMQ_MESH_ENDPOINT_SLICES = "AMQ_MESH_ENDPOINT_SLICES";
     private static final String ENV_KUBERNETES_SERVICE_HOST = "KUBERNETES_SERVICE_HOST";
     private static final String ENV_KUBERNETES_SERVICE_PORT = "KUBERNETES_SERVICE_PORT";
 
@@ -54,6 +57,8 @@ public class KubePeerAddressResolver implements PeerAddressResolver {
     private static final String DEFAULT_KUBERNETES_VERSION = "v1";
     private static final String DEFAULT_KUBERNETES_PROTOCOL = "https";
 
+    private static final String METADATA_ACCEPT = "application/json;as=PartialObjectMetadataList;v=v1;g=meta.k8s.io,application/json";
+
     private static final int DEFAULT_CONNECT_TIMEOUT = 5000;
     private static final int DEFAULT_READ_TIMEOUT = 30000;
     private static final int DEFAULT_OPERATION_ATTEMPTS = 3;
@@ -61,6 +66,7 @@ public class KubePeerAddressResolver implements PeerAddressResolver {
 
     private final InsecureStreamProvider streamProvider;
     private final String url;
+    private final String slicesUrl;
     private final Map<String, String> headers;
     private final int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
     private final int readTimeout = DEFAULT_READ_TIMEOUT;
@@ -73,6 +79,36 @@ public class KubePeerAddressResolver implements PeerAddressResolver {
     private int servicePort = -1;
     private boolean portChecked;
 
+    private final boolean endpointSlices;
+    private final EndpointSlices<String> slices = new EndpointSlices<String>() {
+        @Override
+        protected ModelNode listSlices() throws Exception {
+            return getNode(slicesUrl + getSliceSelector(), headers);
+        }
+
+        @Override
+        protected ModelNode listSliceMetadata() throws Exception {
+            Map<String, String> metadataHeaders = new HashMap<String, String>(headers);
+            metadataHeaders.put("Accept", METADATA_ACCEPT);
+            return getNode(slicesUrl + getSliceSelector(), metadataHeaders);
+        }
+
+        @Override
+        protected ModelNode getSlice(String name) throws Exception {
+            return getNode(slicesUrl + "/" + urlencode(name), headers);
+        }
+
+        @Override
+        protected List<String> toEndpoints(ModelNode sliceNode) {
+            return getSliceIPs(sliceNode);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("service [%s] in namespace [%s]", serviceName, serviceNamespace);
+        }
+    };
+
     /**
      * Create a new KubePeerAddressResolver.
      * 
@@ -95,6 +131,9 @@ public class KubePeerAddressResolver implements PeerAddressResolver {
 
         this.url = String.format("%s://%s:%s/api/%s/namespaces/%s/endpoints/%s", masterProtocol, masterHost,
                 masterPort, masterApiVersion, urlencode(serviceNamespace), urlencode(serviceName));
+        this.slicesUrl = String.format("%s://%s:%s/apis/discovery.k8s.io/v1/namespaces/%s/endpointslices", masterProtocol,
+                masterHost, masterPort, urlencode(serviceNamespace));
+        this.endpointSlices = Boolean.parseBoolean(getSystemEnv(ENV_AMQ_MESH_ENDPOINT_SLICES, "false", true));
 
         final String saToken = readFileToString(new File(saTokenFile));
         if (saToken == null) {
@@ -114,6 +153,17 @@ public class KubePeerAddressResolver implements PeerAddressResolver {
     @Override
     public synchronized String[] getPeerIPs() {
         List<String> ips = new ArrayList<String>();
+        if (endpointSlices) {
+            try {
+                ips.addAll(slices.getEndpoints());
+            } catch (Exception e) {
+                LOGGER.error("Error retrieving service endpoint slices from Kubernetes", e);
+            }
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(String.format("getEndpointSlices(%s, %s) = %s", serviceNamespace, serviceName, ips));
+            }
+            return ips.toArray(new String[ips.size()]);
+        }
         try {
             ModelNode rootNode = getEndpointsNode();
             if (rootNode.hasDefined("subsets")) {
@@ -167,6 +217,35 @@ public class KubePeerAddressResolver implements PeerAddressResolver {
     }
 
     private ModelNode getEndpointsNode() throws Exception {
+        return getNode(url, headers);
+    }
+
+    private String getSliceSelector() {
+        return "?labelSelector=" + urlencode("kubernetes.io/service-name=" + serviceName);
+    }
+
+    private List<String> getSliceIPs(ModelNode sliceNode) {
+        List<String> ips = new ArrayList<String>();
+        String addressType = sliceNode.get("addressType").asString();
+        if (("IPv4".equals(addressType) || "IPv6".equals(addressType)) && sliceNode.hasDefined("endpoints")) {
+            for (ModelNode endpointNode : sliceNode.get("endpoints").asList()) {
+                // like the endpoints subsets addresses, only ready endpoints
+                ModelNode readyNode = endpointNode.get("conditions", "ready");
+                if ((readyNode.isDefined() && !readyNode.asBoolean()) || !endpointNode.hasDefined("addresses")) {
+                    continue;
+                }
+                for (ModelNode addressNode : endpointNode.get("addresses").asList()) {
+                    ips.add(addressNode.asString());
+                }
+            }
+        }
+        if (sliceNode.hasDefined("ports")) {
+            initServicePort(sliceNode.get("ports").asList());
+        }
+        return ips;
+    }
+
+    private ModelNode getNode(String url, Map<String, String> headers) throws Exception {
         try (InputStream stream = openStream(url, headers, connectTimeout, readTimeout, operationAttempts,
                 operationSleep, streamProvider)) {
             return ModelNode.fromJSONStream(stream);
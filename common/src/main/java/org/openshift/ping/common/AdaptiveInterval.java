@@ -0,0 +1,79 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A polling interval which follows the churn of the polled members.
+ * <p/>
+ * A round which sees the members change (i.e. during a rolling deployment) drops the interval to the
+ * minimum; every round which sees the same members as the one before doubles it, up to the maximum.
+ * The change rate is the exponentially weighted share of recent rounds which saw a change.
+ */
+public class AdaptiveInterval {
+    private static final double WEIGHT = 0.2;
+
+    private final long minInterval;
+    private final long maxInterval;
+
+    private long interval;
+    private double changeRate;
+    private Set<Object> members;
+
+    /**
+     * @param minInterval the interval while the members change, in milliseconds
+     * @param maxInterval the interval once the members are stable, in milliseconds
+     */
+    public AdaptiveInterval(long minInterval, long maxInterval) {
+        this.minInterval = minInterval;
+        this.maxInterval = Math.max(minInterval, maxInterval);
+        this.interval = minInterval;
+    }
+
+    /**
+     * Compares the members of a round with those of the previous round.
+     *
+     * @return the interval until the next round, in milliseconds
+     */
+    public synchronized long update(Collection<?> current) {
+        Set<Object> set = new HashSet<Object>(current);
+        boolean changed = members != null && !members.equals(set);
+        members = set;
+        return update(changed);
+    }
+
+    /**
+     * @param changed whether the round saw the members change
+     * @return the interval until the next round, in milliseconds
+     */
+    public synchronized long update(boolean changed) {
+        changeRate = changeRate * (1 - WEIGHT) + (changed ? WEIGHT : 0);
+        interval = changed ? minInterval : Math.min(maxInterval, interval * 2);
+        return interval;
+    }
+
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    public synchronized double getChangeRate() {
+        return changeRate;
+    }
+}
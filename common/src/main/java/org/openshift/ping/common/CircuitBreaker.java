@@ -0,0 +1,123 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opens after a number of consecutive failed operations, failing further operations fast with a
+ * {@link CircuitBreakerOpenException} instead of adding to the load of an unhealthy server.
+ * <p/>
+ * Once open for the open time, a single trial operation is let through: if it succeeds the breaker
+ * closes again, if it fails the breaker stays open for another open time.
+ */
+public final class CircuitBreaker {
+    private static final Logger log = Logger.getLogger(CircuitBreaker.class.getName());
+
+    private final String name;
+    private final int threshold;
+    private final long openNanos;
+
+    private int failures;
+    private boolean open;
+    private boolean trial;
+    private long openedAt;
+
+    /**
+     * @param name the name of the guarded operations, for logging
+     * @param threshold the number of consecutive failures which opens the breaker
+     * @param openTime the time the breaker stays open before a trial, in milliseconds
+     */
+    public CircuitBreaker(String name, int threshold, long openTime) {
+        this.name = name;
+        this.threshold = threshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openTime);
+    }
+
+    /**
+     * @return a new, closed circuit breaker with the name, threshold and open time of this one
+     */
+    public CircuitBreaker copy() {
+        return new CircuitBreaker(name, threshold, TimeUnit.NANOSECONDS.toMillis(openNanos));
+    }
+
+    /**
+     * @return the threshold and open time, i.e. to tell circuit breakers of different settings apart
+     */
+    public String getSettings() {
+        return String.format("%s failures, %sms open", threshold, TimeUnit.NANOSECONDS.toMillis(openNanos));
+    }
+
+    /**
+     * @return true if an operation may be executed now
+     */
+    public synchronized boolean allowRequest() {
+        if (!open) {
+            return true;
+        }
+        if (!trial && System.nanoTime() - openedAt >= openNanos) {
+            trial = true;
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized void onSuccess() {
+        if (open && log.isLoggable(Level.INFO)) {
+            log.info(String.format("Circuit breaker of [%s] closed", name));
+        }
+        failures = 0;
+        open = false;
+        trial = false;
+    }
+
+    public synchronized void onFailure() {
+        failures++;
+        if (trial) {
+            trial = false;
+            openedAt = System.nanoTime();
+        } else if (!open && failures >= threshold) {
+            open = true;
+            openedAt = System.nanoTime();
+            if (log.isLoggable(Level.WARNING)) {
+                log.warning(String.format("Circuit breaker of [%s] opened after %s consecutive failures; failing fast for %sms",
+                        name, failures, TimeUnit.NANOSECONDS.toMillis(openNanos)));
+            }
+        }
+    }
+
+    /**
+     * Reports an operation given up before it completed, i.e. a hedged request cancelled as the other one
+     * won. It counts as a failure only while a trial is pending, so that the trial is not left pending for
+     * good; otherwise it is not counted at all.
+     */
+    public synchronized void onAbort() {
+        if (trial) {
+            onFailure();
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    public String toString() {
+        return name;
+    }
+}
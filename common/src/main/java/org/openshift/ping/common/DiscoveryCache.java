@@ -0,0 +1,174 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches discovery results for a time to live, per key (i.e. the cluster name).
+ * <p/>
+ * A fresh result is returned as is. A stale result is returned right away as well, while a single
+ * background refresh replaces it. If the refresh fails, the stale result is kept and served until a
+ * later refresh succeeds. Only the very first load of a key blocks the caller.
+ */
+public class DiscoveryCache<V> {
+    private static final Logger log = Logger.getLogger(DiscoveryCache.class.getName());
+
+    private final String name;
+    private final long ttlNanos;
+    private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<String, Entry<V>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    private final Object loadLock = new Object();
+    private ExecutorService executor;
+
+    /**
+     * @param name the name of the refresh thread
+     * @param ttl the time to live of a result, in milliseconds
+     */
+    public DiscoveryCache(String name, long ttl) {
+        this.name = name;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttl);
+    }
+
+    public V get(String key, Callable<V> loader) throws Exception {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return load(key, loader);
+        }
+        if (System.nanoTime() - entry.loaded < ttlNanos) {
+            hits.incrementAndGet();
+        } else {
+            staleHits.incrementAndGet();
+            refresh(key, entry, loader);
+        }
+        return entry.value;
+    }
+
+    private V load(String key, Callable<V> loader) throws Exception {
+        synchronized (loadLock) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                // loaded by a concurrent caller
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            misses.incrementAndGet();
+            V value = loader.call();
+            entries.put(key, new Entry<V>(value));
+            return value;
+        }
+    }
+
+    private void refresh(final String key, final Entry<V> entry, final Callable<V> loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable refresh = new Runnable() {
+            public void run() {
+                try {
+                    V value = loader.call();
+                    entries.replace(key, entry, new Entry<V>(value));
+                    refreshes.incrementAndGet();
+                } catch (Throwable t) {
+                    refreshFailures.incrementAndGet();
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine(String.format("Refresh of [%s] failed, keeping the stale result: %s", key, t));
+                    }
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            }
+        };
+        try {
+            getExecutor().execute(refresh);
+        } catch (RuntimeException re) {
+            // shut down
+            entry.refreshing.set(false);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Drops all results and stops the refresh thread.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures.get();
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long loaded = System.nanoTime();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(V value) {
+            this.value = value;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Limits the hosts a discovery round is sent to.
+ * <p/>
+ * Half of the fan-out (rounded up) goes to the lowest-sorted hosts, which every member picks alike and
+ * which therefore learn of everyone and become the likely coordinators. The other half goes to hosts
+ * picked at random from the rest, so that members still find each other while the lowest hosts are down.
+ */
+final class DiscoveryFanout {
+
+    private static final Comparator<InetSocketAddress> ADDRESS_ORDER = new Comparator<InetSocketAddress>() {
+        public int compare(InetSocketAddress a, InetSocketAddress b) {
+            byte[] x = a.getAddress().getAddress();
+            byte[] y = b.getAddress().getAddress();
+            if (x.length != y.length) {
+                return x.length - y.length;
+            }
+            for (int i = 0; i < x.length; i++) {
+                int d = (x[i] & 0xff) - (y[i] & 0xff);
+                if (d != 0) {
+                    return d;
+                }
+            }
+            return a.getPort() - b.getPort();
+        }
+    };
+
+    private DiscoveryFanout() {}
+
+    /**
+     * @param fanout the maximum number of hosts to select; 0 or less selects all of them
+     * @return the selected hosts
+     */
+    static List<InetSocketAddress> select(List<InetSocketAddress> hosts, int fanout, Random random) {
+        if (fanout <= 0 || hosts.size() <= fanout) {
+            return hosts;
+        }
+        List<InetSocketAddress> sorted = new ArrayList<InetSocketAddress>(hosts.size());
+        for (InetSocketAddress host : hosts) {
+            if (!host.isUnresolved()) {
+                sorted.add(host);
+            }
+        }
+        if (sorted.size() <= fanout) {
+            return sorted;
+        }
+        Collections.sort(sorted, ADDRESS_ORDER);
+        int lowest = (fanout + 1) / 2;
+        List<InetSocketAddress> selected = new ArrayList<InetSocketAddress>(sorted.subList(0, lowest));
+        // partial Fisher-Yates shuffle of the rest
+        for (int i = lowest; i < fanout; i++) {
+            int j = i + random.nextInt(sorted.size() - i);
+            selected.add(sorted.get(j));
+            sorted.set(j, sorted.get(i));
+        }
+        return selected;
+    }
+
+}
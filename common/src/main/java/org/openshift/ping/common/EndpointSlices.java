@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Keeps the endpoints of a service current from its discovery.k8s.io/v1 EndpointSlices.
+ * <p/>
+ * The first refresh lists the slices of the service. Later refreshes list only the name and
+ * resourceVersion of each slice, and fetch just the slices which were added or changed since,
+ * so the cost of a refresh follows the changed slices rather than the size of the service.
+ * <p/>
+ * Subclasses do the requests and turn a slice into endpoints.
+ */
+public abstract class EndpointSlices<T> {
+    private static final Logger log = Logger.getLogger(EndpointSlices.class.getName());
+
+    private final Map<String, Slice<T>> slices = new LinkedHashMap<String, Slice<T>>();
+
+    public synchronized List<T> getEndpoints() throws Exception {
+        if (slices.isEmpty()) {
+            list();
+        } else {
+            refresh();
+        }
+        List<T> endpoints = new ArrayList<T>();
+        for (Slice<T> slice : slices.values()) {
+            endpoints.addAll(slice.endpoints);
+        }
+        return endpoints;
+    }
+
+    public synchronized void clear() {
+        slices.clear();
+    }
+
+    /**
+     * @return the EndpointSliceList of the service
+     */
+    protected abstract ModelNode listSlices() throws Exception;
+
+    /**
+     * @return the slices of the service as a PartialObjectMetadataList, or any list with their metadata
+     */
+    protected abstract ModelNode listSliceMetadata() throws Exception;
+
+    /**
+     * @param name the name of the slice, not URL-encoded
+     * @return the EndpointSlice
+     */
+    protected abstract ModelNode getSlice(String name) throws Exception;
+
+    protected abstract List<T> toEndpoints(ModelNode sliceNode);
+
+    private void list() throws Exception {
+        for (ModelNode sliceNode : listSlices().get("items").asList()) {
+            put(sliceNode);
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("Listed %s endpoint slices of %s", slices.size(), this));
+        }
+    }
+
+    private void refresh() throws Exception {
+        Map<String, String> current = new HashMap<String, String>();
+        for (ModelNode itemNode : listSliceMetadata().get("items").asList()) {
+            ModelNode metadataNode = itemNode.get("metadata");
+            current.put(metadataNode.get("name").asString(), metadataNode.get("resourceVersion").asString());
+        }
+        int changed = 0;
+        slices.keySet().retainAll(current.keySet());
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            Slice<T> slice = slices.get(entry.getKey());
+            if (slice == null || !slice.resourceVersion.equals(entry.getValue())) {
+                put(getSlice(entry.getKey()));
+                changed++;
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("Fetched %s of %s endpoint slices of %s", changed, current.size(), this));
+        }
+    }
+
+    private void put(ModelNode sliceNode) {
+        ModelNode metadataNode = sliceNode.get("metadata");
+        slices.put(metadataNode.get("name").asString(), new Slice<T>(metadataNode.get("resourceVersion").asString(), toEndpoints(sliceNode)));
+    }
+
+    private static final class Slice<T> {
+        private final String resourceVersion;
+        private final List<T> endpoints;
+
+        private Slice(String resourceVersion, List<T> endpoints) {
+            this.resourceVersion = resourceVersion;
+            this.endpoints = endpoints;
+        }
+    }
+
+}
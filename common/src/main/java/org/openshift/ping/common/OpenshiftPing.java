@@ -16,22 +16,45 @@
 
 package org.openshift.ping.common;
 
+import static org.openshift.ping.common.Utils.getSystemEnvBoolean;
 import static org.openshift.ping.common.Utils.getSystemEnvInt;
 import static org.openshift.ping.common.Utils.trimToNull;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.InputStream;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.jgroups.Address;
 import org.jgroups.Event;
 import org.jgroups.Message;
 import org.jgroups.PhysicalAddress;
+import org.jgroups.View;
+import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.Property;
 import org.jgroups.protocols.PING;
+import org.jgroups.protocols.TP;
+import org.jgroups.protocols.TpHeader;
 import org.jgroups.stack.IpAddress;
 import org.jgroups.stack.Protocol;
+import org.jgroups.util.Util;
 import org.openshift.ping.common.compatibility.CompatibilityException;
 import org.openshift.ping.common.compatibility.CompatibilityUtils;
 import org.openshift.ping.common.server.ServerFactory;
@@ -58,22 +81,88 @@ public abstract class OpenshiftPing extends PING {
     private long operationSleep = 1000;
     private long _operationSleep;
 
-    private static Method sendDownMethod; //handled via reflection due to JGroups 3/4 incompatibility
+    @Property
+    private long operationMaxSleep = 10000;
+
+    @Property
+    private long operationTimeout = 0;
+
+    @Property
+    private int circuitBreakerThreshold = 0;
+
+    @Property
+    private long circuitBreakerOpenTime = 30000;
+
+    private RetryPolicy _retryPolicy;
+    private volatile List<InetSocketAddress> _lastHosts;
+
+    @Property
+    private long discoveryCacheTtl = 0;
+    private DiscoveryCache<List<InetSocketAddress>> _discoveryCache;
+
+    @Property
+    private boolean batchDiscovery = false;
+    private volatile boolean _batchDiscovery;
+
+    @Property
+    private int fullDiscoveryInterval = 0;
+    private int _fullDiscoveryInterval;
+    private View lastFullDiscoveryView;
+    private int roundsSinceFullDiscovery;
+
+    @Property
+    private int discoveryFanout = 0;
+    private int _discoveryFanout;
+
+    @Property
+    private boolean asyncDiscovery = false;
+
+    @Property
+    private long asyncDiscoveryInterval = 10000;
+
+    @Property
+    private long asyncDiscoveryMaxInterval = 60000;
+
+    private volatile ScheduledExecutorService _discoveryExecutor;
+    private volatile AdaptiveInterval _discoveryInterval;
+    private ScheduledFuture<?> _scheduledRefresh;
+    private final AtomicReference<List<InetSocketAddress>> _hostsSnapshot = new AtomicReference<List<InetSocketAddress>>();
+
+    // Protocol.down(Message) on JGroups 4, Protocol.down(new Event(1, msg)) on JGroups 3; (Protocol, Message)Object either way
+    private static final MethodHandle sendDownHandle;
+    private static final CompatibilityException sendDownFailure;
+    static {
+        MethodHandle handle = null;
+        CompatibilityException failure = null;
+        try {
+            handle = bindSendDown();
+        } catch (Exception e) {
+            failure = new CompatibilityException("Could not find suitable 'down' method.", e);
+        }
+        sendDownHandle = handle;
+        sendDownFailure = failure;
+    }
 
     public OpenshiftPing(String systemEnvPrefix) {
         super();
         _systemEnvPrefix = trimToNull(systemEnvPrefix);
-        try {
-            if(CompatibilityUtils.isJGroups4()) {
-                sendDownMethod = Protocol.class.getMethod("down", Message.class);
-            } else {
-                sendDownMethod = Protocol.class.getMethod("down", Event.class);
-            }
-        } catch (Exception e) {
-            throw new CompatibilityException("Could not find suitable 'up' method.", e);
+        if (sendDownFailure != null) {
+            throw sendDownFailure;
         }
     }
 
+    private static MethodHandle bindSendDown() throws Exception {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        if (CompatibilityUtils.isJGroups4()) {
+            return lookup.findVirtual(Protocol.class, "down", MethodType.methodType(Object.class, Message.class));
+        }
+        MethodHandle down = lookup.findVirtual(Protocol.class, "down", MethodType.methodType(Object.class, Event.class));
+        MethodHandle newEvent = lookup.findConstructor(Event.class, MethodType.methodType(void.class, int.class, Object.class));
+        // 1 is Event.MSG of JGroups 3; the constant is gone in JGroups 4
+        MethodHandle wrap = MethodHandles.insertArguments(newEvent, 0, 1).asType(MethodType.methodType(Event.class, Message.class));
+        return MethodHandles.filterArguments(down, 1, wrap);
+    }
+
     protected final String getSystemEnvName(String systemEnvSuffix) {
         StringBuilder sb = new StringBuilder();
         String suffix = trimToNull(systemEnvSuffix);
@@ -102,6 +191,13 @@ public abstract class OpenshiftPing extends PING {
         return _operationSleep;
     }
 
+    /**
+     * @return the retry policy of the operations reading the hosts
+     */
+    protected final RetryPolicy getRetryPolicy() {
+        return _retryPolicy;
+    }
+
     protected abstract boolean isClusteringEnabled();
 
     protected abstract int getServerPort();
@@ -116,6 +212,22 @@ public abstract class OpenshiftPing extends PING {
         _readTimeout = getSystemEnvInt(getSystemEnvName("READ_TIMEOUT"), readTimeout);
         _operationAttempts = getSystemEnvInt(getSystemEnvName("OPERATION_ATTEMPTS"), operationAttempts);
         _operationSleep = (long) getSystemEnvInt(getSystemEnvName("OPERATION_SLEEP"), (int) operationSleep);
+        long maxSleep = (long) getSystemEnvInt(getSystemEnvName("OPERATION_MAX_SLEEP"), (int) operationMaxSleep);
+        long timeout = (long) getSystemEnvInt(getSystemEnvName("OPERATION_TIMEOUT"), (int) operationTimeout);
+        int threshold = getSystemEnvInt(getSystemEnvName("CIRCUIT_BREAKER_THRESHOLD"), circuitBreakerThreshold);
+        CircuitBreaker circuitBreaker = null;
+        if (threshold > 0) {
+            long openTime = (long) getSystemEnvInt(getSystemEnvName("CIRCUIT_BREAKER_OPEN_TIME"), (int) circuitBreakerOpenTime);
+            circuitBreaker = new CircuitBreaker(getClass().getSimpleName(), threshold, openTime);
+        }
+        _retryPolicy = new RetryPolicy(_operationAttempts, _operationSleep, maxSleep, timeout, circuitBreaker);
+        long ttl = (long) getSystemEnvInt(getSystemEnvName("DISCOVERY_CACHE_TTL"), (int) discoveryCacheTtl);
+        if (ttl > 0) {
+            _discoveryCache = new DiscoveryCache<List<InetSocketAddress>>(getClass().getSimpleName() + "-refresh", ttl);
+        }
+        _batchDiscovery = getSystemEnvBoolean(getSystemEnvName("BATCH_DISCOVERY"), batchDiscovery);
+        _fullDiscoveryInterval = getSystemEnvInt(getSystemEnvName("FULL_DISCOVERY_INTERVAL"), fullDiscoveryInterval);
+        _discoveryFanout = getSystemEnvInt(getSystemEnvName("DISCOVERY_FANOUT"), discoveryFanout);
     }
 
     @Override
@@ -124,19 +236,134 @@ public abstract class OpenshiftPing extends PING {
         _readTimeout = 0;
         _operationAttempts = 0;
         _operationSleep = 0l;
+        _retryPolicy = null;
+        _lastHosts = null;
+        _discoveryCache = null;
+        _batchDiscovery = false;
+        _fullDiscoveryInterval = 0;
+        _discoveryFanout = 0;
         super.destroy();
     }
 
     @Override
     public void start() throws Exception {
         super.start();
+        if (isClusteringEnabled() && getSystemEnvBoolean(getSystemEnvName("ASYNC_DISCOVERY"), asyncDiscovery)) {
+            long interval = (long) getSystemEnvInt(getSystemEnvName("ASYNC_DISCOVERY_INTERVAL"), (int) asyncDiscoveryInterval);
+            long maxInterval = (long) getSystemEnvInt(getSystemEnvName("ASYNC_DISCOVERY_MAX_INTERVAL"), (int) asyncDiscoveryMaxInterval);
+            _discoveryInterval = new AdaptiveInterval(interval, maxInterval);
+            final String name = getClass().getSimpleName() + "-discovery";
+            _discoveryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            _discoveryExecutor.execute(new Runnable() {
+                public void run() {
+                    scheduleRefresh();
+                }
+            });
+        }
+    }
+
+    /**
+     * Schedules the next periodic read of the hosts at the current adaptive interval, replacing the read
+     * scheduled before. Runs on the discovery thread.
+     */
+    private void scheduleRefresh() {
+        ScheduledExecutorService executor = _discoveryExecutor;
+        AdaptiveInterval interval = _discoveryInterval;
+        if (_scheduledRefresh != null) {
+            _scheduledRefresh.cancel(false);
+            _scheduledRefresh = null;
+        }
+        if (executor == null || interval == null) {
+            // stopped
+            return;
+        }
+        try {
+            _scheduledRefresh = executor.schedule(new Runnable() {
+                public void run() {
+                    _scheduledRefresh = null;
+                    refreshHosts();
+                    scheduleRefresh();
+                }
+            }, interval.getInterval(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+            // stopped
+        }
     }
 
     @Override
     public void stop() {
+        ScheduledExecutorService executor = _discoveryExecutor;
+        if (executor != null) {
+            executor.shutdownNow();
+            _discoveryExecutor = null;
+        }
+        _discoveryInterval = null;
+        _hostsSnapshot.set(null);
+        DiscoveryCache<List<InetSocketAddress>> cache = _discoveryCache;
+        if (cache != null) {
+            cache.clear();
+        }
+        synchronized (this) {
+            lastFullDiscoveryView = null;
+            roundsSinceFullDiscovery = 0;
+        }
         super.stop();
     }
 
+    @ManagedAttribute(description = "Discovery requests answered from a fresh cached result")
+    public long getDiscoveryCacheHits() {
+        DiscoveryCache<List<InetSocketAddress>> cache = _discoveryCache;
+        return cache != null ? cache.getHits() : 0;
+    }
+
+    @ManagedAttribute(description = "Discovery requests answered from a stale cached result while it was refreshed")
+    public long getDiscoveryCacheStaleHits() {
+        DiscoveryCache<List<InetSocketAddress>> cache = _discoveryCache;
+        return cache != null ? cache.getStaleHits() : 0;
+    }
+
+    @ManagedAttribute(description = "Discovery requests which had to wait for the hosts to be read")
+    public long getDiscoveryCacheMisses() {
+        DiscoveryCache<List<InetSocketAddress>> cache = _discoveryCache;
+        return cache != null ? cache.getMisses() : 0;
+    }
+
+    @ManagedAttribute(description = "Background refreshes of the cached discovery result")
+    public long getDiscoveryCacheRefreshes() {
+        DiscoveryCache<List<InetSocketAddress>> cache = _discoveryCache;
+        return cache != null ? cache.getRefreshes() : 0;
+    }
+
+    @ManagedAttribute(description = "Failed background refreshes; the stale result was kept")
+    public long getDiscoveryCacheRefreshFailures() {
+        DiscoveryCache<List<InetSocketAddress>> cache = _discoveryCache;
+        return cache != null ? cache.getRefreshFailures() : 0;
+    }
+
+    @ManagedAttribute(description = "The current interval of the async discovery, in milliseconds")
+    public long getDiscoveryInterval() {
+        AdaptiveInterval interval = _discoveryInterval;
+        return interval != null ? interval.getInterval() : 0;
+    }
+
+    @ManagedAttribute(description = "The share of recent async discovery rounds which saw the hosts change")
+    public double getDiscoveryChangeRate() {
+        AdaptiveInterval interval = _discoveryInterval;
+        return interval != null ? interval.getChangeRate() : 0;
+    }
+
+    @ManagedAttribute(description = "Whether the circuit breaker of the operations reading the hosts is open")
+    public boolean isCircuitBreakerOpen() {
+        RetryPolicy retryPolicy = _retryPolicy;
+        return retryPolicy != null && retryPolicy.getCircuitBreaker() != null && retryPolicy.getCircuitBreaker().isOpen();
+    }
+
     public Object down(Event evt) {
         switch (evt.getType()) {
         case Event.CONNECT:
@@ -153,45 +380,222 @@ public abstract class OpenshiftPing extends PING {
         throw new UnsupportedOperationException("handlePingRequest() is no longer supported.");
     }
 
-    private void sendDown(Object obj, Message msg) {
+    private static void sendDown(Protocol prot, Message msg) {
         try {
-            if(CompatibilityUtils.isJGroups4()) {
-                sendDownMethod.invoke(obj, msg);
-            } else {
-                sendDownMethod.invoke(obj, new Event(1, msg));
-            }
-        } catch (Exception e) {
-            throw new CompatibilityException("Could not invoke 'down' method.", e);
+            Object ignored = (Object) sendDownHandle.invokeExact(prot, msg);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new CompatibilityException("Could not invoke 'down' method.", t);
         }
     }
 
     private List<InetSocketAddress> readAll() {
         if (isClusteringEnabled()) {
-            return doReadAll(clusterName);
+            try {
+                return tryReadAll();
+            } catch (Exception e) {
+                List<InetSocketAddress> lastHosts = _lastHosts;
+                if (lastHosts != null && isCircuitBreakerOpen(e)) {
+                    // the API is unhealthy; keep discovering the hosts it reported last
+                    return lastHosts;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Could not read the hosts of cluster [%s]: %s", clusterName, e));
+                }
+                return Collections.emptyList();
+            }
         } else {
             return Collections.emptyList();
         }
     }
 
-    protected abstract List<InetSocketAddress> doReadAll(String clusterName);
+    private List<InetSocketAddress> tryReadAll() throws Exception {
+        final String cluster = clusterName;
+        DiscoveryCache<List<InetSocketAddress>> cache = _discoveryCache;
+        List<InetSocketAddress> hosts;
+        if (cache == null) {
+            hosts = doReadAll(cluster);
+        } else {
+            hosts = cache.get(String.valueOf(cluster), new Callable<List<InetSocketAddress>>() {
+                public List<InetSocketAddress> call() throws Exception {
+                    return doReadAll(cluster);
+                }
+            });
+        }
+        _lastHosts = hosts;
+        return hosts;
+    }
+
+    /**
+     * With async discovery, the hosts are read on the discovery thread only, at an adaptive interval, and
+     * the discovery requests are sent to the hosts read last, however old. The interval starts at
+     * asyncDiscoveryInterval, doubles with each read which finds the hosts unchanged, up to
+     * asyncDiscoveryMaxInterval, and drops back as soon as a read finds them changed, so the reads do not
+     * follow the rate of the discovery requests. Only the first request - sent by the thread connecting
+     * the channel - reads the hosts itself, as there are no hosts to send it to otherwise; this is also
+     * how the members already running learn of a new one. A failed read keeps the hosts read before.
+     */
+    private List<InetSocketAddress> getHosts() {
+        if (_discoveryExecutor == null) {
+            return readAll();
+        }
+        List<InetSocketAddress> hosts = _hostsSnapshot.get();
+        if (hosts == null) {
+            hosts = readAll();
+            _hostsSnapshot.compareAndSet(null, hosts);
+        }
+        return hosts;
+    }
+
+    private void refreshHosts() {
+        if (clusterName == null) {
+            // not connected yet
+            return;
+        }
+        try {
+            List<InetSocketAddress> hosts = tryReadAll();
+            _hostsSnapshot.set(hosts);
+            AdaptiveInterval interval = _discoveryInterval;
+            if (interval != null) {
+                interval.update(hosts);
+            }
+        } catch (Exception e) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Could not read the hosts of cluster [%s]; keeping the hosts read before: %s", clusterName, e));
+            }
+        }
+    }
+
+    private static boolean isCircuitBreakerOpen(Throwable t) {
+        for (; t != null; t = t.getCause()) {
+            if (t instanceof CircuitBreakerOpenException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @throws Exception if the hosts could not be read; a cached result is then kept, if there is one
+     */
+    protected abstract List<InetSocketAddress> doReadAll(String clusterName) throws Exception;
+
+    /**
+     * @return true if the ports of the hosts read are the transport ports of the members, so that the discovery
+     *         requests are sent to them; false to send the requests to the local transport port on every host
+     */
+    protected boolean isHostPortTransportPort() {
+        return false;
+    }
 
     @Override
     protected void sendMcastDiscoveryRequest(Message msg) {
-        final List<InetSocketAddress> hosts = readAll();
+        final List<InetSocketAddress> hosts = DiscoveryFanout.select(selectHosts(getHosts()), _discoveryFanout, ThreadLocalRandom.current());
+        if (hosts.isEmpty()) {
+            return;
+        }
         final PhysicalAddress physical_addr = (PhysicalAddress) down(new Event(Event.GET_PHYSICAL_ADDRESS, local_addr));
         if (!(physical_addr instanceof IpAddress)) {
             log.error("Unable to send PING requests: physical_addr is not an IpAddress.");
             return;
         }
         // XXX: is it better to force this to be defined?
-        // assume symmetry
-        final int port = ((IpAddress) physical_addr).getPort();
+        // assume symmetry, unless the hosts come with their own ports
+        final int port = isHostPortTransportPort() ? -1 : ((IpAddress) physical_addr).getPort();
+        if (_batchDiscovery && hosts.size() > 1 && sendBatched(msg, hosts, port)) {
+            return;
+        }
         for (InetSocketAddress host: hosts) {
             // JGroups messages cannot be reused - https://github.com/belaban/workshop/blob/master/slides/admin.adoc#problem-9-reusing-a-message-the-sebastian-problem
             Message msgToHost = msg.copy();
-            msgToHost.dest(new IpAddress(host.getAddress(), port));
+            msgToHost.dest(new IpAddress(host.getAddress(), port < 0 ? host.getPort() : port));
             sendDown(down_prot, msgToHost);
         }
     }
 
+    /**
+     * With a full discovery interval of N, only every Nth discovery round - and the first one after each
+     * view change - is sent to all hosts. The rounds in between are sent only to the hosts which are not
+     * members of the current view yet, so their cost follows the churn of the cluster rather than its size.
+     */
+    private synchronized List<InetSocketAddress> selectHosts(List<InetSocketAddress> hosts) {
+        View current = view;
+        if (_fullDiscoveryInterval <= 1 || current == null || current != lastFullDiscoveryView
+                || ++roundsSinceFullDiscovery >= _fullDiscoveryInterval) {
+            lastFullDiscoveryView = current;
+            roundsSinceFullDiscovery = 0;
+            return hosts;
+        }
+        // with their own ports, several hosts may share an address
+        boolean hostPorts = isHostPortTransportPort();
+        Set<Object> members = new HashSet<Object>();
+        for (Address member : current.getMembers()) {
+            Object physical = down(new Event(Event.GET_PHYSICAL_ADDRESS, member));
+            if (physical instanceof IpAddress) {
+                IpAddress ipAddress = (IpAddress) physical;
+                members.add(hostPorts ? new InetSocketAddress(ipAddress.getIpAddress(), ipAddress.getPort()) : ipAddress.getIpAddress());
+            }
+        }
+        List<InetSocketAddress> delta = new ArrayList<InetSocketAddress>();
+        for (InetSocketAddress host : hosts) {
+            if (!members.contains(hostPorts ? host : host.getAddress())) {
+                delta.add(host);
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace(String.format("Sending discovery request to %s of %s hosts not in view %s", delta.size(), hosts.size(), current.getViewId()));
+        }
+        return delta;
+    }
+
+    /**
+     * Serializes the discovery request once, the way the transport would, and hands the same bytes
+     * to the transport for each host.
+     * <p/>
+     * This bypasses the bundler and the protocols below this one, so it is only done when this protocol
+     * sits right on top of the transport, as discovery protocols do in the stock stacks. With any protocol
+     * in between - i.e. encryption or compression, which the receivers would expect the request to have
+     * gone through - the requests are sent down the stack per host. Skipping the bundler loses nothing,
+     * as it only bundles messages to the same destination, and each host is sent a single request.
+     *
+     * @param port the port to send to, -1 for the port of each host
+     * @return false if the transport could not be used this way; batching is then disabled
+     */
+    private boolean sendBatched(Message msg, List<InetSocketAddress> hosts, int port) {
+        TP transport = getTransport();
+        if (down_prot != transport) {
+            _batchDiscovery = false;
+            log.warn(String.format("Batched discovery needs %s right on top of the transport, not of [%s]; sending per host",
+                    getClass().getSimpleName(), down_prot.getClass().getName()));
+            return false;
+        }
+        byte[] buf;
+        try {
+            Message copy = msg.copy();
+            copy.src(local_addr);
+            copy.putHeader(transport.getId(), new TpHeader(clusterName));
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) copy.size() + 16);
+            Util.writeMessage(copy, new DataOutputStream(out), false);
+            buf = out.toByteArray();
+        } catch (Throwable t) {
+            // i.e. an older JGroups without Util.writeMessage
+            _batchDiscovery = false;
+            log.warn(String.format("Batched discovery is not supported by transport [%s]; sending per host. Encountered [%s: %s]",
+                    transport.getClass().getName(), t.getClass().getName(), t.getMessage()));
+            return false;
+        }
+        for (InetSocketAddress host : hosts) {
+            int hostPort = port < 0 ? host.getPort() : port;
+            try {
+                transport.sendUnicast(new IpAddress(host.getAddress(), hostPort), buf, 0, buf.length);
+            } catch (Exception e) {
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format("Failed sending discovery request to [%s:%s]: %s", host.getAddress(), hostPort, e));
+                }
+            }
+        }
+        return true;
+    }
+
 }
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.util.Random;
+
+/**
+ * How {@link Utils#execute(java.util.concurrent.Callable, RetryPolicy, boolean)} retries an operation.
+ * <p/>
+ * With a maximum sleep above the sleep, the sleep after the n-th failed attempt is picked at random
+ * between 0 and sleep * 2^(n-1), capped at the maximum sleep ("full jitter"), so that the members of a
+ * cluster which started together do not retry in lockstep. Otherwise the sleep is fixed.
+ */
+public final class RetryPolicy {
+    private final int attempts;
+    private final long sleep;
+    private final long maxSleep;
+    private final long timeout;
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * A fixed sleep between attempts, without a time budget or circuit breaker.
+     */
+    public RetryPolicy(int attempts, long sleep) {
+        this(attempts, sleep, sleep, 0, null);
+    }
+
+    /**
+     * @param attempts the maximum number of attempts
+     * @param sleep the sleep after the first failed attempt, in milliseconds
+     * @param maxSleep the maximum sleep, in milliseconds
+     * @param timeout the time budget of all attempts and sleeps, in milliseconds; 0 or less for none
+     * @param circuitBreaker the circuit breaker of the operation, or null
+     */
+    public RetryPolicy(int attempts, long sleep, long maxSleep, long timeout, CircuitBreaker circuitBreaker) {
+        this.attempts = attempts;
+        this.sleep = sleep;
+        this.maxSleep = maxSleep;
+        this.timeout = timeout;
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * @return a policy with the settings of this one and a new circuit breaker, if this one has a circuit breaker
+     */
+    public RetryPolicy copy() {
+        return new RetryPolicy(attempts, sleep, maxSleep, timeout, circuitBreaker != null ? circuitBreaker.copy() : null);
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param failed the number of failed attempts so far, starting at 1
+     * @return the time to sleep before the next attempt, in milliseconds
+     */
+    public long getSleep(int failed, Random random) {
+        if (maxSleep <= sleep) {
+            return sleep;
+        }
+        long cap = sleep;
+        for (int i = 1; i < failed && cap < maxSleep; i++) {
+            cap <<= 1;
+        }
+        cap = Math.min(cap, maxSleep);
+        return (long) (random.nextDouble() * cap);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (maxSleep <= sleep) {
+            sb.append(String.format("a %sms sleep", sleep));
+        } else {
+            sb.append(String.format("a jittered %s-%sms backoff", sleep, maxSleep));
+        }
+        if (timeout > 0) {
+            sb.append(String.format(" within %sms", timeout));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,269 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Looks up DNS SRV records through JNDI, for any number of threads.
+ * <p/>
+ * A DirContext is costly to create and not thread-safe, so the lookups borrow one from a small pool of
+ * idle contexts and return it afterwards; a context which failed is closed instead. The records of a name
+ * are cached for a time to live, which a caller can shorten, i.e. to 0 to always look them up. JNDI does not
+ * expose the TTLs of the records, so the time to live is a fixed one. The lack of records is not cached, as it
+ * is usually short-lived: i.e. the first pod of a service has no records until it is ready. Only JNDI and the JDK are used, so that this class can be used without
+ * JGroups on the classpath.
+ */
+public class SrvLookup {
+    private static final Logger log = Logger.getLogger(SrvLookup.class.getName());
+
+    private static final SrvLookup DEFAULT = new SrvLookup(createDnsEnvironment(2000, 1), 4, 30000);
+
+    private final Hashtable<String, String> environment;
+    private final BlockingQueue<DirContext> idle;
+    private final long cacheTtl;
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong lookupFailures = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong contextsCreated = new AtomicLong();
+    private final AtomicLong totalLookupNanos = new AtomicLong();
+    private final AtomicLong maxLookupNanos = new AtomicLong();
+
+    /**
+     * @param environment the environment of the contexts
+     * @param poolSize the maximum number of idle contexts kept
+     * @param cacheTtl the time to live of the records of a name, in milliseconds; 0 not to cache them
+     */
+    public SrvLookup(Hashtable<String, String> environment, int poolSize, long cacheTtl) {
+        this.environment = new Hashtable<String, String>(environment);
+        this.idle = new ArrayBlockingQueue<DirContext>(Math.max(1, poolSize));
+        this.cacheTtl = cacheTtl;
+    }
+
+    /**
+     * @return the lookup shared by the whole JVM, which queries the system nameservers without recursion,
+     *         waits 2 seconds for an answer, does not retry - retries are up to the {@link RetryPolicy} of the
+     *         caller - and caches the records found for 30 seconds
+     */
+    public static SrvLookup getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param initialTimeout the milliseconds to wait for the first answer; the wait doubles with each retry
+     * @param retries the retries of a query
+     * @return the environment of a DNS context querying the system nameservers
+     */
+    public static Hashtable<String, String> createDnsEnvironment(int initialTimeout, int retries) {
+        Hashtable<String, String> env = new Hashtable<String, String>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        env.put(Context.PROVIDER_URL, "dns:");
+        env.put("com.sun.jndi.dns.recursion", "false");
+        // default is one second, but os skydns can be slow
+        env.put("com.sun.jndi.dns.timeout.initial", String.valueOf(initialTimeout));
+        env.put("com.sun.jndi.dns.timeout.retries", String.valueOf(retries));
+        return env;
+    }
+
+    /**
+     * @param name the name of the records, i.e. _tcp.ping.myproject.svc.cluster.local
+     * @return the records, sorted by priority and weight; empty if the name has none
+     * @throws NamingException if the lookup failed
+     */
+    public List<SrvRecord> lookup(String name) throws NamingException {
+        return lookup(name, cacheTtl);
+    }
+
+    /**
+     * @param name the name of the records, i.e. _tcp.ping.myproject.svc.cluster.local
+     * @param maxAge the maximum age of cached records, in milliseconds, capped at the cache time to live;
+     *               0 to look the records up in any case
+     * @return the records, sorted by priority and weight; empty if the name has none
+     * @throws NamingException if the lookup failed
+     */
+    public List<SrvRecord> lookup(String name, long maxAge) throws NamingException {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        long maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(Math.min(maxAge, cacheTtl));
+        Entry entry = maxAgeNanos > 0 ? cache.get(key) : null;
+        if (entry != null && System.nanoTime() - entry.fetched < maxAgeNanos) {
+            cacheHits.incrementAndGet();
+            return entry.records;
+        }
+        lookups.incrementAndGet();
+        long start = System.nanoTime();
+        DirContext ctx = borrow();
+        boolean healthy = false;
+        try {
+            List<SrvRecord> records;
+            try {
+                records = query(ctx, name);
+            } catch (NameNotFoundException nnfe) {
+                records = Collections.emptyList();
+            }
+            healthy = true;
+            if (cacheTtl > 0 && !records.isEmpty()) {
+                cache.put(key, new Entry(records, System.nanoTime()));
+            } else {
+                cache.remove(key);
+            }
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("SRV records of [%s]: %s", name, records));
+            }
+            return records;
+        } catch (NamingException ne) {
+            lookupFailures.incrementAndGet();
+            throw ne;
+        } finally {
+            release(ctx, healthy);
+            long nanos = System.nanoTime() - start;
+            totalLookupNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxLookupNanos.get()) && !maxLookupNanos.compareAndSet(max, nanos)) {
+                // retry
+            }
+        }
+    }
+
+    private static List<SrvRecord> query(DirContext ctx, String name) throws NamingException {
+        Attributes attrs = ctx.getAttributes(name, new String[]{"SRV"});
+        Attribute srv = attrs != null ? attrs.get("SRV") : null;
+        if (srv == null) {
+            return Collections.emptyList();
+        }
+        List<SrvRecord> records = new ArrayList<SrvRecord>();
+        NamingEnumeration<?> values = srv.getAll();
+        try {
+            while (values.hasMore()) {
+                records.add(SrvRecord.fromString(String.valueOf(values.next())));
+            }
+        } finally {
+            values.close();
+        }
+        Collections.sort(records);
+        return Collections.unmodifiableList(records);
+    }
+
+    private DirContext borrow() throws NamingException {
+        DirContext ctx = idle.poll();
+        if (ctx == null) {
+            ctx = new InitialDirContext(environment);
+            contextsCreated.incrementAndGet();
+        }
+        return ctx;
+    }
+
+    private void release(DirContext ctx, boolean healthy) {
+        if (!healthy || !idle.offer(ctx)) {
+            close(ctx);
+        }
+    }
+
+    private static void close(DirContext ctx) {
+        try {
+            ctx.close();
+        } catch (NamingException ne) {
+            if (log.isLoggable(Level.FINE)) {
+                log.log(Level.FINE, "Could not close DNS context", ne);
+            }
+        }
+    }
+
+    /**
+     * Closes the idle contexts and clears the cache; the lookup can still be used afterwards.
+     */
+    public void clear() {
+        cache.clear();
+        DirContext ctx;
+        while ((ctx = idle.poll()) != null) {
+            close(ctx);
+        }
+    }
+
+    /**
+     * @return the time to live of the cached records, in milliseconds
+     */
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
+    /**
+     * @return the lookups which were not answered from the cache
+     */
+    public long getLookups() {
+        return lookups.get();
+    }
+
+    public long getLookupFailures() {
+        return lookupFailures.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getContextsCreated() {
+        return contextsCreated.get();
+    }
+
+    /**
+     * @return the average time of the lookups which were not answered from the cache, in milliseconds
+     */
+    public double getAverageLookupTime() {
+        long count = lookups.get();
+        return count > 0 ? totalLookupNanos.get() / (count * 1000000d) : 0;
+    }
+
+    /**
+     * @return the longest time of a lookup, in milliseconds
+     */
+    public double getMaxLookupTime() {
+        return maxLookupNanos.get() / 1000000d;
+    }
+
+    private static final class Entry {
+        private final List<SrvRecord> records;
+        private final long fetched;
+
+        private Entry(List<SrvRecord> records, long fetched) {
+            this.records = records;
+            this.fetched = fetched;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import java.util.Locale;
+
+/**
+ * A DNS SRV record.
+ */
+public final class SrvRecord implements Comparable<SrvRecord> {
+    private final int priority;
+    private final int weight;
+    private final int port;
+    private final String host;
+
+    public SrvRecord(int priority, int weight, int port, String host) {
+        this.priority = priority;
+        this.weight = weight;
+        this.port = port;
+        this.host = host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+    }
+
+    /**
+     * @param input the record as JNDI returns it, i.e. "10 50 8888 pod-1.ping.myproject.svc.cluster.local."
+     */
+    public static SrvRecord fromString(String input) {
+        String[] fields = input.trim().split("\\s+");
+        if (fields.length != 4) {
+            throw new IllegalArgumentException(String.format("Malformed SRV record [%s]", input));
+        }
+        return new SrvRecord(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]), fields[3]);
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Orders by priority, then by descending weight, then by host and port.
+     */
+    @Override
+    public int compareTo(SrvRecord o) {
+        if (priority != o.priority) {
+            return priority < o.priority ? -1 : 1;
+        }
+        if (weight != o.weight) {
+            return weight > o.weight ? -1 : 1;
+        }
+        int c = host.compareToIgnoreCase(o.host);
+        if (c != 0) {
+            return c;
+        }
+        return port < o.port ? -1 : port > o.port ? 1 : 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof SrvRecord)) {
+            return false;
+        }
+        SrvRecord other = (SrvRecord) o;
+        return priority == other.priority && weight == other.weight && port == other.port && host.equalsIgnoreCase(other.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return ((priority * 31 + weight) * 31 + port) * 31 + host.toLowerCase(Locale.ENGLISH).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "SrvRecord{" +
+            "priority=" + priority +
+            ", weight=" + weight +
+            ", port=" + port +
+            ", host='" + host + '\'' +
+            '}';
+    }
+}
@@ -30,6 +30,8 @@ import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,7 +49,11 @@ public final class Utils {
     }
 
     public static final InputStream openStream(String url, Map<String, String> headers, int connectTimeout, int readTimeout, int attempts, long sleep, StreamProvider streamProvider) throws Exception {
-        return execute(new OpenStream(streamProvider, url, headers, connectTimeout, readTimeout), attempts, sleep, true);
+        return openStream(url, headers, connectTimeout, readTimeout, new RetryPolicy(attempts, sleep), streamProvider);
+    }
+
+    public static final InputStream openStream(String url, Map<String, String> headers, int connectTimeout, int readTimeout, RetryPolicy retryPolicy, StreamProvider streamProvider) throws Exception {
+        return execute(new OpenStream(streamProvider, url, headers, connectTimeout, readTimeout), retryPolicy, true);
     }
 
     public static final InputStream openFile(String name) throws FileNotFoundException {
@@ -173,6 +179,22 @@ public final class Utils {
         return def;
     }
 
+    public static final boolean getSystemEnvBoolean(final String key, final boolean def) {
+        return getSystemEnvBoolean(new String[]{key}, def);
+    }
+
+    public static final boolean getSystemEnvBoolean(final String[] keys, final boolean def) {
+        if (keys != null) {
+            for (String key : keys) {
+                String val = getSystemEnv(key, null, true);
+                if (val != null) {
+                    return Boolean.parseBoolean(val);
+                }
+            }
+        }
+        return def;
+    }
+
     public static final String trimToNull(String s) {
         if (s != null) {
             s = s.trim();
@@ -192,8 +214,12 @@ public final class Utils {
     }
 
     public static final <V> V execute(Callable<V> callable, int attempts, long sleep) {
+        return execute(callable, new RetryPolicy(attempts, sleep));
+    }
+
+    public static final <V> V execute(Callable<V> callable, RetryPolicy retryPolicy) {
         try {
-            return execute(callable, attempts, sleep, false);
+            return execute(callable, retryPolicy, false);
         } catch (Exception e) {
             // exception message logged in overloaded method below
             return null;
@@ -201,30 +227,76 @@ public final class Utils {
     }
 
     public static final <V> V execute(Callable<V> callable, int attempts, long sleep, boolean throwOnFail) throws Exception {
+        return execute(callable, new RetryPolicy(attempts, sleep), throwOnFail);
+    }
+
+    /**
+     * Calls the callable until it returns a value, at most the attempts of the retry policy and, if
+     * the policy has a time budget, only as long as the next attempt would start within it. There is
+     * no sleep after the last attempt.
+     *
+     * @throws CircuitBreakerOpenException if throwOnFail and the circuit breaker of the policy is open
+     */
+    public static final <V> V execute(Callable<V> callable, RetryPolicy retryPolicy, boolean throwOnFail) throws Exception {
+        CircuitBreaker circuitBreaker = retryPolicy.getCircuitBreaker();
+        if (circuitBreaker != null && !circuitBreaker.allowRequest()) {
+            String emsg = String.format("Circuit breaker of [%s] is open; not executing [%s]", circuitBreaker, callable.getClass().getSimpleName());
+            if (throwOnFail) {
+                throw new CircuitBreakerOpenException(emsg);
+            }
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(emsg);
+            }
+            return null;
+        }
+        long start = System.nanoTime();
         V value = null;
-        int tries = attempts;
+        int tries = 0;
         Throwable lastFail = null;
-        while (tries > 0) {
-            tries--;
-            try {
-               value = callable.call();
-               if (value != null) {
-                   lastFail = null;
-                   break;
-               }
-            } catch (Throwable fail) {
-                lastFail = fail;
+        boolean aborted = true;
+        try {
+            while (tries < retryPolicy.getAttempts()) {
+                tries++;
+                try {
+                   value = callable.call();
+                   if (value != null) {
+                       lastFail = null;
+                       break;
+                   }
+                } catch (Throwable fail) {
+                    lastFail = fail;
+                }
+                if (tries >= retryPolicy.getAttempts()) {
+                    break;
+                }
+                long sleep = retryPolicy.getSleep(tries, ThreadLocalRandom.current());
+                long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (retryPolicy.getTimeout() > 0 && elapsed + sleep >= retryPolicy.getTimeout()) {
+                    break;
+                }
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
             }
-            try {
-                Thread.sleep(sleep);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException(e);
+            aborted = false;
+        } finally {
+            if (circuitBreaker != null) {
+                if (aborted || (lastFail != null && Thread.currentThread().isInterrupted())) {
+                    // given up, i.e. the losing leg of a hedged request
+                    circuitBreaker.onAbort();
+                } else if (lastFail != null) {
+                    circuitBreaker.onFailure();
+                } else {
+                    circuitBreaker.onSuccess();
+                }
             }
         }
         if (lastFail != null && (throwOnFail || log.isLoggable(Level.INFO))) {
-            String emsg = String.format("%s attempt(s) with a %sms sleep to execute [%s] failed. Last failure was [%s: %s]",
-                    attempts, sleep, callable.getClass().getSimpleName(), lastFail.getClass().getName(), lastFail.getMessage());
+            String emsg = String.format("%s attempt(s) with %s to execute [%s] failed. Last failure was [%s: %s]",
+                    tries, retryPolicy, callable.getClass().getSimpleName(), lastFail.getClass().getName(), lastFail.getMessage());
             if (throwOnFail) {
                 throw new Exception(emsg, lastFail);
             } else {
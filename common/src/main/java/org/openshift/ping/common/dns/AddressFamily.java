@@ -0,0 +1,102 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * The IP address families, to order and filter the addresses of the discovered hosts by.
+ */
+public enum AddressFamily {
+    IPV4, IPV6;
+
+    public boolean matches(InetAddress address) {
+        return this == IPV4 ? address instanceof Inet4Address : address instanceof Inet6Address;
+    }
+
+    /**
+     * @param name ipv4 or ipv6, in any case; null, empty or none for no preference
+     * @return the family, or null for no preference
+     */
+    public static AddressFamily parse(String name) {
+        if (name == null || name.trim().isEmpty() || "none".equalsIgnoreCase(name.trim())) {
+            return null;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException iae) {
+            throw new IllegalArgumentException(String.format("Unknown address family [%s]; expected ipv4, ipv6 or none", name));
+        }
+    }
+
+    /**
+     * @param bindAddress the address the transport is bound to, null if unknown
+     * @return the families the transport can send to: IPv4 from an IPv4 address, IPv6 from a specific IPv6 address,
+     *         and both from the IPv6 wildcard address, which is dual-stack, or from an unknown address
+     */
+    public static Set<AddressFamily> reachableFrom(InetAddress bindAddress) {
+        if (bindAddress instanceof Inet4Address) {
+            return EnumSet.of(IPV4);
+        } else if (bindAddress instanceof Inet6Address && !bindAddress.isAnyLocalAddress()) {
+            return EnumSet.of(IPV6);
+        }
+        return EnumSet.allOf(AddressFamily.class);
+    }
+
+    /**
+     * @param preferred the family to order first, null to keep the order
+     * @return the addresses of the preferred family, then the others, each in the order given
+     */
+    public static List<InetAddress> sort(List<InetAddress> addresses, AddressFamily preferred) {
+        if (preferred == null) {
+            return addresses;
+        }
+        List<InetAddress> sorted = new ArrayList<InetAddress>(addresses.size());
+        List<InetAddress> others = new ArrayList<InetAddress>();
+        for (InetAddress address : addresses) {
+            (preferred.matches(address) ? sorted : others).add(address);
+        }
+        sorted.addAll(others);
+        return sorted;
+    }
+
+    /**
+     * @return the addresses of the given families, in the order given
+     */
+    public static List<InetAddress> filter(List<InetAddress> addresses, Set<AddressFamily> families) {
+        if (families.size() == values().length) {
+            return addresses;
+        }
+        List<InetAddress> filtered = new ArrayList<InetAddress>(addresses.size());
+        for (InetAddress address : addresses) {
+            for (AddressFamily family : families) {
+                if (family.matches(address)) {
+                    filtered.add(address);
+                    break;
+                }
+            }
+        }
+        return filtered;
+    }
+}
@@ -0,0 +1,333 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.openshift.ping.common.SrvRecord;
+
+/**
+ * Encodes DNS queries and decodes DNS responses (RFC 1035), as far as the resolvers need them.
+ */
+final class DnsMessage {
+    static final int TYPE_A = 1;
+    static final int TYPE_CNAME = 5;
+    static final int TYPE_SOA = 6;
+    static final int TYPE_AAAA = 28;
+    static final int TYPE_SRV = 33;
+
+    static final int RCODE_NOERROR = 0;
+    static final int RCODE_NXDOMAIN = 3;
+
+    private static final int CLASS_IN = 1;
+    private static final int FLAG_RESPONSE = 0x8000;
+    private static final int FLAG_TRUNCATED = 0x0200;
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+    private static final int MAX_POINTERS = 64;
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    static final class Record {
+        private final String name;
+        private final int type;
+        private final long ttl;
+        private final Object data;
+
+        Record(String name, int type, long ttl, Object data) {
+            this.name = name;
+            this.type = type;
+            this.ttl = ttl;
+            this.data = data;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        int getType() {
+            return type;
+        }
+
+        /**
+         * @return the time to live, in seconds
+         */
+        long getTtl() {
+            return ttl;
+        }
+
+        /**
+         * @return an InetAddress for A and AAAA records, a SrvRecord for SRV records, the target name for
+         *         CNAME records and the minimum TTL, as a Long, for SOA records
+         */
+        Object getData() {
+            return data;
+        }
+    }
+
+    private final int id;
+    private final int flags;
+    private final String questionName;
+    private final int questionType;
+    private final List<Record> answers;
+    private final List<Record> authorities;
+    private final List<Record> additionals;
+
+    private DnsMessage(int id, int flags, String questionName, int questionType, List<Record> answers, List<Record> authorities,
+                       List<Record> additionals) {
+        this.id = id;
+        this.flags = flags;
+        this.questionName = questionName;
+        this.questionType = questionType;
+        this.answers = answers;
+        this.authorities = authorities;
+        this.additionals = additionals;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    boolean isResponse() {
+        return (flags & FLAG_RESPONSE) != 0;
+    }
+
+    boolean isTruncated() {
+        return (flags & FLAG_TRUNCATED) != 0;
+    }
+
+    int getRcode() {
+        return flags & 0xF;
+    }
+
+    String getQuestionName() {
+        return questionName;
+    }
+
+    int getQuestionType() {
+        return questionType;
+    }
+
+    List<Record> getAnswers() {
+        return answers;
+    }
+
+    /**
+     * @return the records of the given type in the answer section, whatever their owner name, so that the
+     *         records at the end of a CNAME chain are included
+     */
+    List<Record> getAnswers(int type) {
+        List<Record> records = new ArrayList<Record>();
+        for (Record answer : answers) {
+            if (answer.getType() == type) {
+                records.add(answer);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the records of the additional section, i.e. the addresses of the targets of SRV records
+     */
+    List<Record> getAdditionals() {
+        return additionals;
+    }
+
+    /**
+     * @return the seconds a negative answer may be cached (RFC 2308), or -1 if the response carries no SOA record
+     */
+    long getNegativeTtl() {
+        for (Record authority : authorities) {
+            if (authority.getType() == TYPE_SOA) {
+                return Math.min(authority.getTtl(), ((Long) authority.getData()).longValue());
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a recursive query for one question of class IN
+     */
+    static byte[] query(int id, String name, int type) {
+        ByteBuffer buffer = ByteBuffer.allocate(12 + name.length() + 2 + 4);
+        buffer.putShort((short) id);
+        buffer.putShort((short) FLAG_RECURSION_DESIRED);
+        buffer.putShort((short) 1);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        for (String label : toLabels(name)) {
+            byte[] bytes = label.getBytes(ASCII);
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+        }
+        buffer.put((byte) 0);
+        buffer.putShort((short) type);
+        buffer.putShort((short) CLASS_IN);
+        byte[] query = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(query);
+        return query;
+    }
+
+    static DnsMessage parse(byte[] data, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+        try {
+            int id = buffer.getShort() & 0xFFFF;
+            int flags = buffer.getShort() & 0xFFFF;
+            int questions = buffer.getShort() & 0xFFFF;
+            int answerCount = buffer.getShort() & 0xFFFF;
+            int authorityCount = buffer.getShort() & 0xFFFF;
+            int additionalCount = buffer.getShort() & 0xFFFF;
+            String questionName = null;
+            int questionType = 0;
+            for (int i = 0; i < questions; i++) {
+                String name = readName(buffer);
+                int type = buffer.getShort() & 0xFFFF;
+                buffer.getShort(); // class
+                if (i == 0) {
+                    questionName = name;
+                    questionType = type;
+                }
+            }
+            if ((flags & FLAG_TRUNCATED) != 0) {
+                // the sections may be cut anywhere; the answer is read over TCP instead
+                answerCount = 0;
+                authorityCount = 0;
+                additionalCount = 0;
+            }
+            List<Record> answers = readRecords(buffer, answerCount);
+            List<Record> authorities = readRecords(buffer, authorityCount);
+            List<Record> additionals = readRecords(buffer, additionalCount);
+            return new DnsMessage(id, flags, questionName, questionType, answers, authorities, additionals);
+        } catch (BufferUnderflowException bue) {
+            throw new IOException("Malformed DNS message: too short");
+        } catch (IndexOutOfBoundsException ioobe) {
+            throw new IOException("Malformed DNS message: bad name pointer");
+        }
+    }
+
+    private static List<Record> readRecords(ByteBuffer buffer, int count) throws IOException {
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        List<Record> records = new ArrayList<Record>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readName(buffer);
+            int type = buffer.getShort() & 0xFFFF;
+            int clazz = buffer.getShort() & 0xFFFF;
+            long ttl = buffer.getInt() & 0xFFFFFFFFL;
+            int rdLength = buffer.getShort() & 0xFFFF;
+            int end = buffer.position() + rdLength;
+            if (end > buffer.limit()) {
+                throw new BufferUnderflowException();
+            }
+            Object data = null;
+            if (clazz == CLASS_IN || type == TYPE_SOA) {
+                data = readData(buffer, type, rdLength);
+            }
+            buffer.position(end);
+            if (data != null) {
+                // a TTL with the most significant bit set is treated as 0 (RFC 2181)
+                records.add(new Record(name, type, ttl > Integer.MAX_VALUE ? 0 : ttl, data));
+            }
+        }
+        return records;
+    }
+
+    private static Object readData(ByteBuffer buffer, int type, int rdLength) throws IOException {
+        switch (type) {
+            case TYPE_A:
+            case TYPE_AAAA:
+                if (rdLength != (type == TYPE_A ? 4 : 16)) {
+                    throw new IOException(String.format("Malformed DNS message: address of %s bytes", rdLength));
+                }
+                byte[] address = new byte[rdLength];
+                buffer.get(address);
+                return InetAddress.getByAddress(address);
+            case TYPE_CNAME:
+                return readName(buffer);
+            case TYPE_SRV:
+                int priority = buffer.getShort() & 0xFFFF;
+                int weight = buffer.getShort() & 0xFFFF;
+                int port = buffer.getShort() & 0xFFFF;
+                return new SrvRecord(priority, weight, port, readName(buffer));
+            case TYPE_SOA:
+                readName(buffer); // primary name server
+                readName(buffer); // responsible mailbox
+                buffer.position(buffer.position() + 16); // serial, refresh, retry, expire
+                return Long.valueOf(buffer.getInt() & 0xFFFFFFFFL);
+            default:
+                return null;
+        }
+    }
+
+    private static String readName(ByteBuffer buffer) throws IOException {
+        StringBuilder name = new StringBuilder();
+        int position = buffer.position();
+        int end = -1;
+        int pointers = 0;
+        while (true) {
+            int length = buffer.get(position) & 0xFF;
+            if (length == 0) {
+                position++;
+                break;
+            } else if ((length & 0xC0) == 0xC0) {
+                if (++pointers > MAX_POINTERS) {
+                    throw new IOException("Malformed DNS message: name pointer loop");
+                }
+                if (end < 0) {
+                    end = position + 2;
+                }
+                position = ((length & 0x3F) << 8) | (buffer.get(position + 1) & 0xFF);
+            } else if ((length & 0xC0) == 0) {
+                byte[] label = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    label[i] = buffer.get(position + 1 + i);
+                }
+                if (name.length() > 0) {
+                    name.append('.');
+                }
+                name.append(new String(label, ASCII));
+                position += 1 + length;
+            } else {
+                throw new IOException(String.format("Malformed DNS message: label type [%s]", length >> 6));
+            }
+        }
+        buffer.position(end < 0 ? position : end);
+        return name.toString();
+    }
+
+    private static List<String> toLabels(String name) {
+        List<String> labels = new ArrayList<String>();
+        for (String label : name.split("\\.")) {
+            if (label.isEmpty()) {
+                continue;
+            }
+            if (label.length() > 63) {
+                throw new IllegalArgumentException(String.format("DNS label [%s] of [%s] is longer than 63 characters", label, name));
+            }
+            labels.add(label);
+        }
+        return labels;
+    }
+}
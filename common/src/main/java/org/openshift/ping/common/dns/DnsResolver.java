@@ -0,0 +1,52 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Set;
+
+import org.openshift.ping.common.SrvRecord;
+
+/**
+ * Resolves the addresses of the service hosts.
+ */
+public interface DnsResolver {
+
+    /**
+     * @param name the name to resolve
+     * @return the addresses of the name; empty if it has none
+     * @throws Exception if the name could not be resolved
+     */
+    List<InetAddress> getAddresses(String name) throws Exception;
+
+    /**
+     * @param name the name to resolve
+     * @param families the families of the addresses wanted; a resolver may skip looking up the others
+     * @return the addresses of the name of the given families; empty if it has none
+     * @throws Exception if the name could not be resolved
+     */
+    List<InetAddress> getAddresses(String name, Set<AddressFamily> families) throws Exception;
+
+    /**
+     * @param name the name of the records, i.e. _tcp.ping
+     * @return the SRV records of the name, sorted by priority and weight; empty if it has none
+     * @throws Exception if the name could not be resolved
+     */
+    List<SrvRecord> getSrvRecords(String name) throws Exception;
+
+}
@@ -0,0 +1,64 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import java.lang.reflect.InvocationTargetException;
+
+import org.openshift.ping.common.SrvLookup;
+
+/**
+ * Creates the resolvers configured by name.
+ */
+public final class DnsResolvers {
+
+    private DnsResolvers() {
+    }
+
+    /**
+     * @param name jdk, or null, to resolve through the JDK; nio to query the nameservers of /etc/resolv.conf directly
+     *             with the record TTLs, A and AAAA at once; or the class name of a {@link DnsResolver}
+     * @param classLoader the class loader of a resolver given by class name
+     */
+    public static DnsResolver create(String name, ClassLoader classLoader) throws Exception {
+        return create(name, classLoader, SrvLookup.getDefault().getCacheTtl());
+    }
+
+    /**
+     * @param srvCacheTtl the maximum age of the SRV records the jdk resolver reuses, in milliseconds; 0 to always
+     *                    look them up
+     * @see #create(String, ClassLoader)
+     */
+    public static DnsResolver create(String name, ClassLoader classLoader, long srvCacheTtl) throws Exception {
+        if (name == null || "jdk".equalsIgnoreCase(name)) {
+            return new JdkDnsResolver(srvCacheTtl);
+        } else if ("nio".equalsIgnoreCase(name)) {
+            return NioDnsResolver.fromResolvConf();
+        }
+        try {
+            return (DnsResolver) Class.forName(name, true, classLoader).getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException ite) {
+            Throwable cause = ite.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ite;
+        }
+    }
+
+}
@@ -0,0 +1,68 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.naming.NamingException;
+
+import org.openshift.ping.common.SrvLookup;
+import org.openshift.ping.common.SrvRecord;
+
+/**
+ * Resolves addresses through the JDK, i.e. the system resolver, cached as configured by networkaddress.cache.ttl,
+ * and SRV records through the {@link SrvLookup#getDefault() shared JNDI lookup}.
+ */
+public class JdkDnsResolver implements DnsResolver {
+    private final long srvCacheTtl;
+
+    /**
+     * Reuses the SRV records for the time to live of the shared lookup.
+     */
+    public JdkDnsResolver() {
+        this(SrvLookup.getDefault().getCacheTtl());
+    }
+
+    /**
+     * @param srvCacheTtl the maximum age of reused SRV records, in milliseconds; 0 to always look them up
+     */
+    public JdkDnsResolver(long srvCacheTtl) {
+        this.srvCacheTtl = srvCacheTtl;
+    }
+
+    @Override
+    public List<InetAddress> getAddresses(String name) throws UnknownHostException {
+        InetAddress[] addresses = InetAddress.getAllByName(name);
+        return addresses != null ? Arrays.asList(addresses) : Collections.<InetAddress>emptyList();
+    }
+
+    @Override
+    public List<InetAddress> getAddresses(String name, Set<AddressFamily> families) throws UnknownHostException {
+        return AddressFamily.filter(getAddresses(name), families);
+    }
+
+    @Override
+    public List<SrvRecord> getSrvRecords(String name) throws NamingException {
+        return SrvLookup.getDefault().lookup(name, srvCacheTtl);
+    }
+
+}
@@ -0,0 +1,529 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openshift.ping.common.SrvRecord;
+
+/**
+ * Resolves by talking DNS to the nameservers itself, bypassing the JDK and its global address cache.
+ * <p/>
+ * The queries of a lookup - i.e. A and AAAA - are sent together to every nameserver over one non-blocking
+ * datagram channel, and the first usable answer to each wins. A truncated answer is read again over TCP.
+ * Answers are cached for the TTL of their records, and negative answers for the TTL the zone gives them
+ * (RFC 2308); a TTL of 0 is not cached. Names are searched like the system resolver does, with the search
+ * domains and ndots of resolv.conf. /etc/hosts is not read.
+ */
+public class NioDnsResolver implements DnsResolver {
+    private static final Logger log = Logger.getLogger(NioDnsResolver.class.getName());
+
+    public static final String RESOLV_CONF = "/etc/resolv.conf";
+
+    private static final int DNS_PORT = 53;
+    private static final int MAX_MESSAGE = 65535;
+
+    private final List<InetSocketAddress> nameservers;
+    private final List<String> searchDomains;
+    private final int ndots;
+    private final int timeout;
+    private final int attempts;
+
+    private final ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<String, CacheEntry>();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final Random random = new SecureRandom();
+
+    /**
+     * @param nameservers the nameservers, all queried at once
+     * @param searchDomains the domains appended to names with fewer than ndots dots
+     * @param ndots the dots a name needs to be tried as is before the search domains
+     * @param timeout the milliseconds to wait for the answers of an attempt
+     * @param attempts the attempts before a lookup fails
+     */
+    public NioDnsResolver(List<InetSocketAddress> nameservers, List<String> searchDomains, int ndots, int timeout, int attempts) {
+        if (nameservers.isEmpty()) {
+            throw new IllegalArgumentException("No nameservers");
+        }
+        this.nameservers = new ArrayList<InetSocketAddress>(nameservers);
+        this.searchDomains = new ArrayList<String>(searchDomains);
+        this.ndots = ndots;
+        this.timeout = timeout;
+        this.attempts = Math.max(1, attempts);
+    }
+
+    /**
+     * @return a resolver with the nameservers, search domains and options of /etc/resolv.conf
+     */
+    public static NioDnsResolver fromResolvConf() throws IOException {
+        Reader reader = new InputStreamReader(new FileInputStream(RESOLV_CONF), "US-ASCII");
+        try {
+            return fromResolvConf(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the nameserver, domain and search lines and the ndots, timeout and attempts options, with the
+     * defaults and limits of resolv.conf(5).
+     */
+    public static NioDnsResolver fromResolvConf(Reader reader) throws IOException {
+        List<InetSocketAddress> nameservers = new ArrayList<InetSocketAddress>();
+        List<String> searchDomains = Collections.emptyList();
+        int ndots = 1;
+        int timeout = 5;
+        int attempts = 2;
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens.length < 2 || tokens[0].startsWith("#") || tokens[0].startsWith(";")) {
+                continue;
+            }
+            if ("nameserver".equals(tokens[0])) {
+                // resolv.conf holds address literals only, so this does not do a lookup
+                nameservers.add(new InetSocketAddress(InetAddress.getByName(tokens[1]), DNS_PORT));
+            } else if ("domain".equals(tokens[0])) {
+                searchDomains = Collections.singletonList(tokens[1]);
+            } else if ("search".equals(tokens[0])) {
+                searchDomains = Arrays.asList(tokens).subList(1, tokens.length);
+            } else if ("options".equals(tokens[0])) {
+                for (int i = 1; i < tokens.length; i++) {
+                    if (tokens[i].startsWith("ndots:")) {
+                        ndots = Math.min(15, parseOption(tokens[i], ndots));
+                    } else if (tokens[i].startsWith("timeout:")) {
+                        timeout = Math.min(30, parseOption(tokens[i], timeout));
+                    } else if (tokens[i].startsWith("attempts:")) {
+                        attempts = Math.min(5, parseOption(tokens[i], attempts));
+                    }
+                }
+            }
+        }
+        if (nameservers.isEmpty()) {
+            nameservers.add(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), DNS_PORT));
+        }
+        return new NioDnsResolver(nameservers, searchDomains, ndots, (int) TimeUnit.SECONDS.toMillis(timeout), attempts);
+    }
+
+    private static int parseOption(String option, int defaultValue) {
+        try {
+            return Integer.parseInt(option.substring(option.indexOf(':') + 1));
+        } catch (NumberFormatException nfe) {
+            return defaultValue;
+        }
+    }
+
+    public List<InetSocketAddress> getNameservers() {
+        return Collections.unmodifiableList(nameservers);
+    }
+
+    public List<String> getSearchDomains() {
+        return Collections.unmodifiableList(searchDomains);
+    }
+
+    public int getNdots() {
+        return ndots;
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.get();
+    }
+
+    /**
+     * @return the IPv4 addresses, then the IPv6 addresses, of the first name of the search which has any
+     */
+    @Override
+    public List<InetAddress> getAddresses(String name) throws IOException {
+        return getAddresses(name, EnumSet.allOf(AddressFamily.class));
+    }
+
+    /**
+     * The A and AAAA queries of the families are sent at once; a family not wanted is not queried.
+     *
+     * @return the IPv4 addresses, then the IPv6 addresses, of the first name of the search which has any
+     */
+    @Override
+    public List<InetAddress> getAddresses(String name, Set<AddressFamily> families) throws IOException {
+        int[] types = new int[families.size()];
+        int i = 0;
+        for (AddressFamily family : families) {
+            types[i++] = family == AddressFamily.IPV4 ? DnsMessage.TYPE_A : DnsMessage.TYPE_AAAA;
+        }
+        List<Object> data = lookup(name, types);
+        List<InetAddress> addresses = new ArrayList<InetAddress>(data.size());
+        for (Object address : data) {
+            addresses.add((InetAddress) address);
+        }
+        return addresses;
+    }
+
+    /**
+     * The addresses of the targets which the nameserver adds to the answer are cached as well, so that resolving
+     * the targets afterwards needs no further queries.
+     */
+    @Override
+    public List<SrvRecord> getSrvRecords(String name) throws IOException {
+        List<Object> data = lookup(name, DnsMessage.TYPE_SRV);
+        List<SrvRecord> records = new ArrayList<SrvRecord>(data.size());
+        for (Object record : data) {
+            records.add((SrvRecord) record);
+        }
+        Collections.sort(records);
+        return records;
+    }
+
+    /**
+     * Looks up the records of the given types of the first name of the search which has any.
+     *
+     * @return the data of the records, by type in the order given; see {@link DnsMessage.Record#getData()}
+     */
+    List<Object> lookup(String name, int... types) throws IOException {
+        for (String candidate : getSearchNames(name)) {
+            List<Object> data = lookupName(candidate, types);
+            if (!data.isEmpty()) {
+                return data;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    List<String> getSearchNames(String name) {
+        if (name.endsWith(".")) {
+            return Collections.singletonList(name.substring(0, name.length() - 1));
+        }
+        int dots = 0;
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) == '.') {
+                dots++;
+            }
+        }
+        List<String> names = new ArrayList<String>(searchDomains.size() + 1);
+        if (dots >= ndots) {
+            names.add(name);
+        }
+        for (String domain : searchDomains) {
+            names.add(name + "." + domain);
+        }
+        if (dots < ndots) {
+            names.add(name);
+        }
+        return names;
+    }
+
+    private List<Object> lookupName(String name, int[] types) throws IOException {
+        List<List<Object>> results = new ArrayList<List<Object>>(Collections.<List<Object>>nCopies(types.length, null));
+        int[] missing = new int[types.length];
+        int misses = 0;
+        long now = System.nanoTime();
+        for (int i = 0; i < types.length; i++) {
+            CacheEntry entry = cache.get(getCacheKey(name, types[i]));
+            if (entry != null && entry.expires - now > 0) {
+                cacheHits.incrementAndGet();
+                results.set(i, entry.data);
+            } else {
+                cacheMisses.incrementAndGet();
+                missing[misses++] = types[i];
+            }
+        }
+        if (misses > 0) {
+            missing = Arrays.copyOf(missing, misses);
+            DnsMessage[] responses = exchange(name, missing);
+            for (int i = 0, m = 0; i < types.length; i++) {
+                if (results.get(i) == null) {
+                    results.set(i, store(name, missing[m], responses[m]));
+                    m++;
+                }
+            }
+        }
+        List<Object> data = new ArrayList<Object>();
+        for (List<Object> result : results) {
+            data.addAll(result);
+        }
+        return data;
+    }
+
+    private List<Object> store(String name, int type, DnsMessage response) {
+        List<DnsMessage.Record> records = response.getAnswers(type);
+        List<Object> data = new ArrayList<Object>(records.size());
+        long ttl;
+        if (records.isEmpty()) {
+            ttl = Math.max(0, response.getNegativeTtl());
+        } else {
+            ttl = Long.MAX_VALUE;
+            for (DnsMessage.Record record : response.getAnswers()) {
+                if (record.getType() == type || record.getType() == DnsMessage.TYPE_CNAME) {
+                    ttl = Math.min(ttl, record.getTtl());
+                }
+            }
+            for (DnsMessage.Record record : records) {
+                data.add(record.getData());
+            }
+        }
+        data = Collections.unmodifiableList(data);
+        put(name, type, data, ttl);
+        if (type == DnsMessage.TYPE_SRV) {
+            storeAdditionalAddresses(response.getAdditionals());
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("Resolved [%s] type [%s] to %s, cached for [%s] seconds", name, type, data, ttl));
+        }
+        return data;
+    }
+
+    /**
+     * Caches the A and AAAA records of the additional section by name. A nameserver adds all the addresses it has
+     * of a target, so a family missing for a name which has the other is cached as having no addresses.
+     */
+    private void storeAdditionalAddresses(List<DnsMessage.Record> additionals) {
+        Map<String, List<DnsMessage.Record>> byName = new LinkedHashMap<String, List<DnsMessage.Record>>();
+        for (DnsMessage.Record record : additionals) {
+            if (record.getType() == DnsMessage.TYPE_A || record.getType() == DnsMessage.TYPE_AAAA) {
+                String name = record.getName().toLowerCase(Locale.ENGLISH);
+                List<DnsMessage.Record> records = byName.get(name);
+                if (records == null) {
+                    records = new ArrayList<DnsMessage.Record>();
+                    byName.put(name, records);
+                }
+                records.add(record);
+            }
+        }
+        for (Map.Entry<String, List<DnsMessage.Record>> entry : byName.entrySet()) {
+            long ttl = Long.MAX_VALUE;
+            List<Object> v4 = new ArrayList<Object>();
+            List<Object> v6 = new ArrayList<Object>();
+            for (DnsMessage.Record record : entry.getValue()) {
+                ttl = Math.min(ttl, record.getTtl());
+                (record.getType() == DnsMessage.TYPE_A ? v4 : v6).add(record.getData());
+            }
+            put(entry.getKey(), DnsMessage.TYPE_A, Collections.unmodifiableList(v4), ttl);
+            put(entry.getKey(), DnsMessage.TYPE_AAAA, Collections.unmodifiableList(v6), ttl);
+        }
+    }
+
+    private void put(String name, int type, List<Object> data, long ttl) {
+        if (ttl > 0) {
+            cache.put(getCacheKey(name, type), new CacheEntry(data, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttl)));
+        }
+    }
+
+    private static String getCacheKey(String name, int type) {
+        return type + ":" + name.toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Sends a query per type to every nameserver and waits for the first usable answer to each.
+     *
+     * @return the answers, by type
+     */
+    private DnsMessage[] exchange(String name, int[] types) throws IOException {
+        DnsMessage[] responses = new DnsMessage[types.length];
+        IOException failure = null;
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            int[] ids = new int[types.length];
+            byte[][] queries = new byte[types.length][];
+            int[] failures = new int[types.length];
+            Selector selector = Selector.open();
+            DatagramChannel channel = DatagramChannel.open();
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ);
+                for (int i = 0; i < types.length; i++) {
+                    if (responses[i] == null) {
+                        ids[i] = random.nextInt(0x10000);
+                        queries[i] = DnsMessage.query(ids[i], name, types[i]);
+                        for (InetSocketAddress nameserver : nameservers) {
+                            channel.send(ByteBuffer.wrap(queries[i]), nameserver);
+                        }
+                    }
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+                ByteBuffer buffer = ByteBuffer.allocate(MAX_MESSAGE);
+                while (isWaiting(responses, failures)) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    selector.select(remaining);
+                    selector.selectedKeys().clear();
+                    SocketAddress source;
+                    while ((source = channel.receive(buffer)) != null) {
+                        buffer.flip();
+                        try {
+                            if (!nameservers.contains(source)) {
+                                continue;
+                            }
+                            DnsMessage response = DnsMessage.parse(buffer.array(), buffer.limit());
+                            int i = match(response, name, types, ids, responses);
+                            if (i < 0) {
+                                continue;
+                            }
+                            if (response.isTruncated()) {
+                                response = exchangeTcp((InetSocketAddress) source, queries[i], deadline);
+                                if (response.getId() != ids[i]) {
+                                    throw new IOException(String.format("Nameserver [%s] answered another query over TCP", source));
+                                }
+                            }
+                            if (response.getRcode() == DnsMessage.RCODE_NOERROR || response.getRcode() == DnsMessage.RCODE_NXDOMAIN) {
+                                responses[i] = response;
+                            } else {
+                                failures[i]++;
+                                failure = new IOException(String.format("Nameserver [%s] failed to resolve [%s] type [%s]: rcode [%s]",
+                                    source, name, types[i], response.getRcode()));
+                            }
+                        } catch (IOException ioe) {
+                            failure = ioe;
+                            if (log.isLoggable(Level.FINE)) {
+                                log.log(Level.FINE, String.format("Ignoring the answer of [%s] for [%s]", source, name), ioe);
+                            }
+                        } finally {
+                            buffer.clear();
+                        }
+                    }
+                }
+            } finally {
+                channel.close();
+                selector.close();
+            }
+            if (!isWaiting(responses, new int[types.length])) {
+                return responses;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        throw new SocketTimeoutException(String.format("No nameserver of %s answered for [%s] within %s attempt(s) of %sms",
+            nameservers, name, attempts, timeout));
+    }
+
+    private boolean isWaiting(DnsMessage[] responses, int[] failures) {
+        for (int i = 0; i < responses.length; i++) {
+            if (responses[i] == null && failures[i] < nameservers.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int match(DnsMessage response, String name, int[] types, int[] ids, DnsMessage[] responses) {
+        if (!response.isResponse() || !name.equalsIgnoreCase(response.getQuestionName())) {
+            return -1;
+        }
+        for (int i = 0; i < types.length; i++) {
+            if (responses[i] == null && ids[i] == response.getId() && types[i] == response.getQuestionType()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static DnsMessage exchangeTcp(InetSocketAddress nameserver, byte[] query, long deadline) throws IOException {
+        Selector selector = Selector.open();
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.configureBlocking(false);
+            SelectionKey key = channel.register(selector, 0);
+            if (!channel.connect(nameserver)) {
+                while (!channel.finishConnect()) {
+                    await(key, SelectionKey.OP_CONNECT, deadline);
+                }
+            }
+            ByteBuffer out = ByteBuffer.allocate(2 + query.length);
+            out.putShort((short) query.length).put(query).flip();
+            while (out.hasRemaining()) {
+                if (channel.write(out) == 0) {
+                    await(key, SelectionKey.OP_WRITE, deadline);
+                }
+            }
+            ByteBuffer length = ByteBuffer.allocate(2);
+            readFully(channel, length, key, deadline);
+            ByteBuffer in = ByteBuffer.allocate(length.getShort(0) & 0xFFFF);
+            readFully(channel, in, key, deadline);
+            return DnsMessage.parse(in.array(), in.limit());
+        } finally {
+            channel.close();
+            selector.close();
+        }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer, SelectionKey key, long deadline) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                throw new EOFException("Nameserver closed the connection");
+            } else if (read == 0) {
+                await(key, SelectionKey.OP_READ, deadline);
+            }
+        }
+    }
+
+    private static void await(SelectionKey key, int ops, long deadline) throws IOException {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Timed out talking to the nameserver over TCP");
+        }
+        key.interestOps(ops);
+        key.selector().select(remaining);
+        key.selector().selectedKeys().clear();
+    }
+
+    private static final class CacheEntry {
+        private final List<Object> data;
+        private final long expires;
+
+        private CacheEntry(List<Object> data, long expires) {
+            this.data = data;
+            this.expires = expires;
+        }
+    }
+
+}
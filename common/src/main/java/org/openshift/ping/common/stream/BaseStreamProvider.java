@@ -1,16 +1,60 @@
 package org.openshift.ping.common.stream;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 public abstract class BaseStreamProvider implements StreamProvider {
     private static final Logger log = Logger.getLogger(BaseStreamProvider.class.getName());
 
+    // bytes read from an unfinished response on close to keep its connection alive; with more left, the connection is closed
+    private static final int MAX_DRAIN = 64 * 1024;
+
+    private volatile boolean compression;
+
+    /**
+     * @param compression true to ask for gzip compressed responses; whether a response is compressed is up to the server
+     */
+    public void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Sizes the JDK HTTP keep-alive cache, which is shared by every HttpURLConnection of the JVM.
+     * Takes effect only if called before the first HTTP connection of the JVM, and only for settings not already
+     * given as system properties.
+     *
+     * @param maxConnections the maximum number of idle connections kept per destination (http.maxConnections), 0 for the JDK default
+     * @param keepAliveTimeout the seconds an idle connection is kept when the server does not say (http.keepAlive.time.server,
+     *                         honored by newer JDKs), 0 for the JDK default
+     */
+    public static void configureKeepAlive(int maxConnections, int keepAliveTimeout) {
+        if (maxConnections > 0) {
+            setSystemPropertyIfAbsent("http.maxConnections", String.valueOf(maxConnections));
+        }
+        if (keepAliveTimeout > 0) {
+            setSystemPropertyIfAbsent("http.keepAlive.time.server", String.valueOf(keepAliveTimeout));
+        }
+    }
+
+    private static void setSystemPropertyIfAbsent(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("Set system property [%s] to [%s].", key, value));
+            }
+        }
+    }
+
     public URLConnection openConnection(String url, Map<String, String> headers, int connectTimeout, int readTimeout) throws IOException {
         if (log.isLoggable(Level.FINE)) {
             log.log(Level.FINE, String.format("%s opening connection: url [%s], headers [%s], connectTimeout [%s], readTimeout [%s]", getClass().getSimpleName(), url, headers, connectTimeout, readTimeout));
@@ -21,6 +65,9 @@ public abstract class BaseStreamProvider implements StreamProvider {
                 connection.addRequestProperty(entry.getKey(), entry.getValue());
             }
         }
+        if (compression && connection.getRequestProperty("Accept-Encoding") == null) {
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+        }
         if (connectTimeout < 0 || readTimeout < 0) {
             throw new IllegalArgumentException(
                 String.format("Neither connectTimeout [%s] nor readTimeout [%s] can be less than 0 for URLConnection.", connectTimeout, readTimeout));
@@ -30,4 +77,91 @@ public abstract class BaseStreamProvider implements StreamProvider {
         return connection;
     }
 
+    /**
+     * Returns the response stream of the connection.
+     * <p/>
+     * The JDK keeps a connection alive for the next request to the same server only when its response was
+     * read to the end. Closing the returned stream therefore reads what is left of the response as far as it
+     * has already arrived, and the body of an error response is read before the error is thrown. An error
+     * status is thrown as an {@link HttpStatusException}.
+     * <p/>
+     * A gzip or deflate encoded response is decompressed while it is read.
+     */
+    protected InputStream getInputStream(URLConnection connection) throws IOException {
+        try {
+            InputStream stream = new KeepAliveInputStream(connection.getInputStream());
+            String encoding = connection.getContentEncoding();
+            if ("gzip".equalsIgnoreCase(encoding)) {
+                try {
+                    return new GZIPInputStream(stream, 8192);
+                } catch (IOException ioe) {
+                    stream.close();
+                    throw ioe;
+                }
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                return new InflaterInputStream(stream);
+            }
+            return stream;
+        } catch (IOException ioe) {
+            if (connection instanceof HttpURLConnection) {
+                HttpURLConnection httpConnection = (HttpURLConnection) connection;
+                InputStream errorStream = httpConnection.getErrorStream();
+                if (errorStream != null) {
+                    try {
+                        drain(errorStream, true);
+                    } finally {
+                        errorStream.close();
+                    }
+                }
+                int status = -1;
+                try {
+                    // the status of the failed response; does not send the request again
+                    status = httpConnection.getResponseCode();
+                } catch (IOException noResponse) {
+                    // i.e. the connection failed
+                }
+                if (status >= 400) {
+                    throw new HttpStatusException(status, ioe.getMessage(), ioe);
+                }
+            }
+            throw ioe;
+        }
+    }
+
+    /**
+     * Reads and discards at most MAX_DRAIN bytes.
+     *
+     * @param block false to read only what can be read without blocking
+     */
+    private static void drain(InputStream in, boolean block) {
+        try {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            int n = 0;
+            while (drained < MAX_DRAIN && n != -1) {
+                int available = in.available();
+                if (!block && available <= 0) {
+                    break;
+                }
+                n = in.read(buffer, 0, block ? buffer.length : Math.min(buffer.length, available));
+                drained += n;
+            }
+        } catch (IOException ignored) {
+            // the connection will not be reused
+        }
+    }
+
+    private static class KeepAliveInputStream extends FilterInputStream {
+        private KeepAliveInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // never block, i.e. on a watch which is closed from another thread
+            drain(in, false);
+            in.close();
+        }
+    }
+
 }
@@ -79,7 +79,7 @@ public class CertificateStreamProvider extends BaseStreamProvider {
                 log.fine(String.format("Using URLConnection for url [%s].", url));
             }
         }
-        return connection.getInputStream();
+        return getInputStream(connection);
     }
 
     private KeyManager[] configureClientCert(String clientCertFile, String clientKeyFile, char[] clientKeyPassword, String clientKeyAlgo) throws Exception {
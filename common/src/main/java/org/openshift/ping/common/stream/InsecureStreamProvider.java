@@ -63,7 +63,7 @@ public class InsecureStreamProvider extends BaseStreamProvider {
                 log.fine(String.format("Using URLConnection for url [%s].", url));
             }
         }
-        return connection.getInputStream();
+        return getInputStream(connection);
     }
 
 }
@@ -12,6 +12,7 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,6 +44,14 @@ public class TokenStreamProvider extends BaseStreamProvider {
     @Override
     public InputStream openStream(String url, Map<String, String> headers, int connectTimeout, int readTimeout)
             throws IOException {
+        if (token != null) {
+            // curl -k -H "Authorization: Bearer $(cat /var/run/secrets/kubernetes.io/serviceaccount/token)" \
+            // https://172.30.0.2:443/api/v1/namespaces/dward/pods?labelSelector=application%3Deap-app
+            // a copy, as the caller's headers are shared between concurrent requests
+            headers = headers != null ? new HashMap<String, String>(headers) : new HashMap<String, String>();
+            headers.put("Authorization", "Bearer " + token);
+        }
+
         URLConnection connection = openConnection(url, headers, connectTimeout, readTimeout);
 
         if (connection instanceof HttpsURLConnection) {
@@ -58,12 +67,7 @@ public class TokenStreamProvider extends BaseStreamProvider {
             }
         }
 
-        if (token != null) {
-            // curl -k -H "Authorization: Bearer $(cat /var/run/secrets/kubernetes.io/serviceaccount/token)" \
-            // https://172.30.0.2:443/api/v1/namespaces/dward/pods?labelSelector=application%3Deap-app
-            headers.put("Authorization", "Bearer " + token);
-        }
-        return connection.getInputStream();
+        return getInputStream(connection);
     }
 
     static TrustManager[] configureCaCert(String caCertFile) throws Exception {
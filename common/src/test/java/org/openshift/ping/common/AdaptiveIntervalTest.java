@@ -0,0 +1,49 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class AdaptiveIntervalTest {
+
+    @Test
+    public void testInterval() {
+        AdaptiveInterval interval = new AdaptiveInterval(1000, 10000);
+        assertEquals(1000, interval.getInterval());
+        // stable
+        assertEquals(2000, interval.update(Arrays.asList("a", "b")));
+        assertEquals(4000, interval.update(Arrays.asList("b", "a")));
+        assertEquals(8000, interval.update(Arrays.asList("a", "b")));
+        assertEquals(10000, interval.update(Arrays.asList("a", "b")));
+        assertEquals(0.0, interval.getChangeRate(), 0.0);
+
+        // rolling deployment
+        assertEquals(1000, interval.update(Arrays.asList("a", "c")));
+        assertEquals(1000, interval.update(Arrays.asList("c", "d")));
+        double rate = interval.getChangeRate();
+        assertTrue(rate > 0.3);
+
+        // stable again
+        assertEquals(2000, interval.update(Arrays.asList("c", "d")));
+        assertTrue(interval.getChangeRate() < rate);
+    }
+}
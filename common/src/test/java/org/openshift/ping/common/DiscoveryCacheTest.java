@@ -0,0 +1,78 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class DiscoveryCacheTest {
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        final AtomicInteger loads = new AtomicInteger();
+        final boolean[] fail = new boolean[1];
+        Callable<Integer> loader = new Callable<Integer>() {
+            public Integer call() throws Exception {
+                if (fail[0]) {
+                    throw new IOException("API server unavailable");
+                }
+                return loads.incrementAndGet();
+            }
+        };
+        DiscoveryCache<Integer> cache = new DiscoveryCache<Integer>("test-refresh", 100);
+        try {
+            assertEquals(1, cache.get("cluster", loader).intValue());
+            assertEquals(1, cache.get("cluster", loader).intValue());
+            assertEquals(1, cache.getMisses());
+            assertEquals(1, cache.getHits());
+
+            // stale: served right away, refreshed in the background
+            Thread.sleep(150);
+            assertEquals(1, cache.get("cluster", loader).intValue());
+            waitFor(cache, 1, 0);
+            assertEquals(2, cache.get("cluster", loader).intValue());
+
+            // failed refresh: the stale result is kept
+            fail[0] = true;
+            Thread.sleep(150);
+            assertEquals(2, cache.get("cluster", loader).intValue());
+            waitFor(cache, 1, 1);
+
+            // still stale, refreshed again
+            fail[0] = false;
+            assertEquals(2, cache.get("cluster", loader).intValue());
+            waitFor(cache, 2, 1);
+            assertEquals(3, cache.get("cluster", loader).intValue());
+            assertEquals(1, cache.getMisses());
+        } finally {
+            cache.clear();
+        }
+    }
+
+    private static void waitFor(DiscoveryCache<?> cache, long refreshes, long refreshFailures) throws InterruptedException {
+        for (int i = 0; i < 100 && (cache.getRefreshes() != refreshes || cache.getRefreshFailures() != refreshFailures); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(refreshes, cache.getRefreshes());
+        assertEquals(refreshFailures, cache.getRefreshFailures());
+    }
+}
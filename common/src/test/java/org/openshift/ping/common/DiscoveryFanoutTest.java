@@ -0,0 +1,127 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DiscoveryFanoutTest {
+
+    private static final int MEMBERS = 1000;
+
+    @Test
+    public void testSelect() throws Exception {
+        List<InetSocketAddress> hosts = hosts(10);
+        Collections.shuffle(hosts, new Random(1));
+        assertEquals(hosts, DiscoveryFanout.select(hosts, 0, new Random(1)));
+        assertEquals(hosts, DiscoveryFanout.select(hosts, 10, new Random(1)));
+
+        List<InetSocketAddress> selected = DiscoveryFanout.select(hosts, 5, new Random(1));
+        assertEquals(5, selected.size());
+        assertEquals(5, new HashSet<InetSocketAddress>(selected).size());
+        // the lowest-sorted hosts come first
+        assertEquals(hosts(3), selected.subList(0, 3));
+    }
+
+    /**
+     * Simulates a cold start of all members, spread over a few rounds, until every member knows of all the
+     * others: a bounded fan-out takes a few more rounds than sending to every host, but far fewer messages.
+     */
+    @Test
+    public void testConvergence() throws Exception {
+        long[] unlimited = simulate(0, 5, new Random(42));
+        for (int fanout : new int[]{4, 8, 16}) {
+            long[] bounded = simulate(fanout, 5, new Random(42));
+            assertTrue("fan-out " + fanout + " took " + bounded[0] + " rounds", bounded[0] <= unlimited[0] + 3);
+            assertTrue("fan-out " + fanout + " sent " + bounded[1] + " messages", bounded[1] * 10 < unlimited[1]);
+        }
+    }
+
+    /**
+     * A request introduces its sender to the host it is sent to, and the response returns all the members the
+     * host knows of, as with return_entire_cache.
+     *
+     * @return the number of rounds and the number of messages until every member knows of every other one
+     */
+    private static long[] simulate(int fanout, int startRounds, Random random) {
+        List<InetSocketAddress> hosts = hosts(MEMBERS);
+        Map<InetSocketAddress, Integer> index = new HashMap<InetSocketAddress, Integer>();
+        for (int i = 0; i < MEMBERS; i++) {
+            index.put(hosts.get(i), i);
+        }
+        int[] start = new int[MEMBERS];
+        BitSet[] known = new BitSet[MEMBERS];
+        for (int i = 0; i < MEMBERS; i++) {
+            start[i] = random.nextInt(startRounds);
+            known[i] = new BitSet(MEMBERS);
+            known[i].set(i);
+        }
+        // the API server lists the hosts in no particular order
+        List<InetSocketAddress> listed = new ArrayList<InetSocketAddress>(hosts);
+        Collections.shuffle(listed, random);
+        long messages = 0;
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < MEMBERS; i++) {
+                if (start[i] > round) {
+                    continue;
+                }
+                for (InetSocketAddress host : DiscoveryFanout.select(listed, fanout, random)) {
+                    messages++;
+                    int j = index.get(host);
+                    if (start[j] <= round && j != i) {
+                        known[j].set(i);
+                        known[i].or(known[j]);
+                    }
+                }
+            }
+            boolean converged = true;
+            for (int i = 0; converged && i < MEMBERS; i++) {
+                converged = known[i].cardinality() == MEMBERS;
+            }
+            if (converged) {
+                return new long[]{round + 1, messages};
+            }
+        }
+        throw new AssertionError("Did not converge with fan-out " + fanout);
+    }
+
+    private static List<InetSocketAddress> hosts(int count) {
+        List<InetSocketAddress> hosts = new ArrayList<InetSocketAddress>(count);
+        for (int i = 0; i < count; i++) {
+            try {
+                hosts.add(new InetSocketAddress(InetAddress.getByAddress(new byte[]{10, 0, (byte) (i >> 8), (byte) i}), 8888));
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return hosts;
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgroups.Address;
+import org.jgroups.Event;
+import org.jgroups.Message;
+import org.jgroups.View;
+import org.jgroups.protocols.SHARED_LOOPBACK;
+import org.jgroups.stack.IpAddress;
+import org.jgroups.util.TimeScheduler3;
+import org.jgroups.util.UUID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class OpenshiftPingTest {
+    private static final int PORT = 7800;
+
+    private final Address a = UUID.randomUUID();
+    private final Address b = UUID.randomUUID();
+    private final Address c = UUID.randomUUID();
+
+    private TestTransport transport;
+    private TestPing ping;
+
+    @Before
+    public void setUp() throws Exception {
+        transport = new TestTransport();
+        transport.physical(a, "10.0.0.1");
+        transport.physical(b, "10.0.0.2");
+        transport.physical(c, "10.0.0.3");
+        ping = new TestPing();
+        ping.hosts("10.0.0.1", "10.0.0.2", "10.0.0.3");
+        ping.setDownProtocol(transport);
+        transport.setUpProtocol(ping);
+        ping.setValue("fullDiscoveryInterval", 3);
+        ping.init();
+        ping.setLocalAddress(a);
+        ping.down(new Event(Event.CONNECT, "cluster"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ping.stop();
+        ping.destroy();
+        transport.getTimer().stop();
+    }
+
+    @Test
+    public void testOnlyNewHostsBetweenFullRounds() throws Exception {
+        ping.view(View.create(a, 1, a, b));
+        assertEquals("first round after view change", hosts("10.0.0.1", "10.0.0.2", "10.0.0.3"), discover());
+        assertEquals(hosts("10.0.0.3"), discover());
+        assertEquals(hosts("10.0.0.3"), discover());
+        assertEquals("every third round", hosts("10.0.0.1", "10.0.0.2", "10.0.0.3"), discover());
+        assertEquals(hosts("10.0.0.3"), discover());
+    }
+
+    @Test
+    public void testFullRoundAfterViewChange() throws Exception {
+        ping.view(View.create(a, 1, a, b));
+        discover();
+        assertEquals(hosts("10.0.0.3"), discover());
+
+        ping.view(View.create(a, 2, a, b, c));
+        assertEquals("first round after view change", hosts("10.0.0.1", "10.0.0.2", "10.0.0.3"), discover());
+        assertEquals("all hosts are members", hosts(), discover());
+
+        // the same members, but a new view
+        ping.view(View.create(a, 3, a, b, c));
+        assertEquals("first round after view change", hosts("10.0.0.1", "10.0.0.2", "10.0.0.3"), discover());
+    }
+
+    @Test
+    public void testFullRoundsWithoutView() throws Exception {
+        assertEquals(hosts("10.0.0.1", "10.0.0.2", "10.0.0.3"), discover());
+        assertEquals(hosts("10.0.0.1", "10.0.0.2", "10.0.0.3"), discover());
+    }
+
+    private List<String> discover() {
+        transport.sent.clear();
+        ping.discover();
+        List<String> sent = new ArrayList<String>(transport.sent);
+        Collections.sort(sent);
+        return sent;
+    }
+
+    private static List<String> hosts(String... hosts) {
+        return Arrays.asList(hosts);
+    }
+
+    static class TestTransport extends SHARED_LOOPBACK {
+        final Map<Address, IpAddress> physicalAddresses = new HashMap<Address, IpAddress>();
+        final List<String> sent = new ArrayList<String>();
+
+        TestTransport() {
+            setTimer(new TimeScheduler3());
+        }
+
+        void physical(Address member, String host) throws Exception {
+            physicalAddresses.put(member, new IpAddress(InetAddress.getByName(host), PORT));
+        }
+
+        @Override
+        public Object down(Event evt) {
+            switch (evt.getType()) {
+            case Event.GET_PHYSICAL_ADDRESS:
+                return physicalAddresses.get(evt.getArg());
+            case 1: // Event.MSG of JGroups 3; the constant is gone in JGroups 4
+                return down((Message) evt.getArg());
+            default:
+                return null;
+            }
+        }
+
+        // overrides Protocol.down(Message) on JGroups 4 only, hence no @Override
+        public Object down(Message msg) {
+            IpAddress dest = (IpAddress) msg.getDest();
+            sent.add(dest.getIpAddress().getHostAddress());
+            return null;
+        }
+    }
+
+    static class TestPing extends OpenshiftPing {
+        private volatile List<InetSocketAddress> hosts;
+
+        TestPing() {
+            super("TEST_PING_");
+        }
+
+        void hosts(String... hosts) throws Exception {
+            List<InetSocketAddress> list = new ArrayList<InetSocketAddress>();
+            for (String host : hosts) {
+                list.add(new InetSocketAddress(InetAddress.getByName(host), 0));
+            }
+            this.hosts = list;
+        }
+
+        void setLocalAddress(Address address) {
+            local_addr = address;
+        }
+
+        void view(View view) {
+            this.view = view;
+        }
+
+        void discover() {
+            sendMcastDiscoveryRequest(new Message(null));
+        }
+
+        @Override
+        protected boolean isClusteringEnabled() {
+            return true;
+        }
+
+        @Override
+        protected int getServerPort() {
+            return 0;
+        }
+
+        @Override
+        protected List<InetSocketAddress> doReadAll(String clusterName) throws Exception {
+            return hosts;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testBackoff() {
+        assertEquals(1000, new RetryPolicy(3, 1000).getSleep(5, new Random()));
+
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0, null);
+        Random random = new Random(7);
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long first = policy.getSleep(1, random);
+            assertTrue(first >= 0 && first < 100);
+            long sixth = policy.getSleep(6, random);
+            assertTrue(sixth >= 0 && sixth < 1000);
+            max = Math.max(max, sixth);
+        }
+        // capped at the maximum sleep, not 100 * 2^5
+        assertTrue(max > 900);
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        Failing failing = new Failing();
+        long start = System.nanoTime();
+        assertNull(Utils.execute(failing, new RetryPolicy(100, 50, 50, 300, null)));
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertTrue("took " + millis + " ms", millis < 400);
+        assertTrue(failing.calls.get() < 100);
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        Failing failing = new Failing();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2, 200);
+        RetryPolicy policy = new RetryPolicy(2, 0, 0, 0, circuitBreaker);
+        for (int i = 0; i < 2; i++) {
+            try {
+                Utils.execute(failing, policy, true);
+                fail();
+            } catch (CircuitBreakerOpenException e) {
+                fail("opened too early");
+            } catch (Exception expected) {
+            }
+        }
+        assertTrue(circuitBreaker.isOpen());
+        assertEquals(4, failing.calls.get());
+
+        // fails fast
+        try {
+            Utils.execute(failing, policy, true);
+            fail();
+        } catch (CircuitBreakerOpenException expected) {
+        }
+        assertEquals(4, failing.calls.get());
+
+        // a single trial after the open time closes it again
+        Thread.sleep(250);
+        failing.fail = false;
+        assertEquals("ok", Utils.execute(failing, policy, true));
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    @Test
+    public void testInterruptedTrial() throws Exception {
+        final Failing failing = new Failing();
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 200);
+        final RetryPolicy policy = new RetryPolicy(2, 10000, 10000, 0, circuitBreaker);
+        try {
+            Utils.execute(failing, new RetryPolicy(1, 0, 0, 0, circuitBreaker), true);
+            fail();
+        } catch (CircuitBreakerOpenException e) {
+            fail("opened too early");
+        } catch (Exception expected) {
+        }
+        assertTrue(circuitBreaker.isOpen());
+
+        // the trial is interrupted in its sleep before the second attempt
+        Thread.sleep(250);
+        Thread trial = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Utils.execute(failing, policy, true);
+                } catch (Exception ignored) {
+                }
+            }
+        });
+        trial.start();
+        while (failing.calls.get() < 2) {
+            Thread.sleep(10);
+        }
+        trial.interrupt();
+        trial.join(5000);
+        assertFalse(trial.isAlive());
+        assertTrue(circuitBreaker.isOpen());
+
+        // the aborted trial does not keep further trials out
+        Thread.sleep(250);
+        failing.fail = false;
+        assertEquals("ok", Utils.execute(failing, new RetryPolicy(1, 0, 0, 0, circuitBreaker), true));
+        assertFalse(circuitBreaker.isOpen());
+    }
+
+    private static class Failing implements Callable<String> {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile boolean fail = true;
+
+        public String call() throws Exception {
+            calls.incrementAndGet();
+            if (fail) {
+                throw new IOException("Service Unavailable");
+            }
+            return "ok";
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.CommunicationException;
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+import javax.naming.directory.BasicAttribute;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.spi.InitialContextFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SrvLookupTest {
+
+    private static final Map<String, List<String>> ZONE = new ConcurrentHashMap<String, List<String>>();
+    private static final AtomicInteger CREATED = new AtomicInteger();
+    private static final AtomicInteger CLOSED = new AtomicInteger();
+    private static final AtomicInteger QUERIES = new AtomicInteger();
+    private static volatile boolean failing;
+
+    /**
+     * Creates contexts answering from the zone, which are thread-hostile: a context used by two threads at once fails.
+     */
+    public static class FakeContextFactory implements InitialContextFactory {
+        @Override
+        public Context getInitialContext(Hashtable<?, ?> environment) {
+            CREATED.incrementAndGet();
+            return (Context) Proxy.newProxyInstance(SrvLookupTest.class.getClassLoader(), new Class<?>[]{DirContext.class},
+                new InvocationHandler() {
+                    private final AtomicInteger users = new AtomicInteger();
+
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        if ("close".equals(method.getName())) {
+                            CLOSED.incrementAndGet();
+                            return null;
+                        } else if ("getAttributes".equals(method.getName())) {
+                            if (users.incrementAndGet() > 1) {
+                                throw new IllegalStateException("Context used concurrently");
+                            }
+                            try {
+                                QUERIES.incrementAndGet();
+                                Thread.sleep(5);
+                                if (failing) {
+                                    throw new CommunicationException("DNS error");
+                                }
+                                List<String> values = ZONE.get(args[0]);
+                                if (values == null) {
+                                    throw new NameNotFoundException("DNS name not found");
+                                }
+                                BasicAttributes attributes = new BasicAttributes();
+                                if (!values.isEmpty()) {
+                                    BasicAttribute srv = new BasicAttribute("SRV");
+                                    for (String value : values) {
+                                        srv.add(value);
+                                    }
+                                    attributes.put(srv);
+                                }
+                                return attributes;
+                            } finally {
+                                users.decrementAndGet();
+                            }
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        }
+    }
+
+    @Before
+    public void setUp() {
+        ZONE.clear();
+        ZONE.put("_tcp.ping", Arrays.asList("20 10 9999 backup.ping.", "10 50 8888 pod-1.ping.", "10 100 8888 pod-2.ping."));
+        ZONE.put("_tcp.nodata", Collections.<String>emptyList());
+        CREATED.set(0);
+        CLOSED.set(0);
+        QUERIES.set(0);
+        failing = false;
+    }
+
+    private static SrvLookup createLookup(int poolSize, long cacheTtl) {
+        Hashtable<String, String> env = new Hashtable<String, String>();
+        env.put(Context.INITIAL_CONTEXT_FACTORY, FakeContextFactory.class.getName());
+        return new SrvLookup(env, poolSize, cacheTtl);
+    }
+
+    @Test
+    public void testRecordsAreSorted() throws Exception {
+        List<SrvRecord> records = createLookup(2, 0).lookup("_tcp.ping");
+        assertEquals(Arrays.asList(
+            new SrvRecord(10, 100, 8888, "pod-2.ping"),
+            new SrvRecord(10, 50, 8888, "pod-1.ping"),
+            new SrvRecord(20, 10, 9999, "backup.ping")), records);
+    }
+
+    @Test
+    public void testMissingRecords() throws Exception {
+        SrvLookup lookup = createLookup(2, 0);
+        assertTrue(lookup.lookup("_tcp.missing").isEmpty());
+        assertTrue(lookup.lookup("_tcp.nodata").isEmpty());
+        assertEquals(0, lookup.getLookupFailures());
+        // neither answer is an error, so the context is reused
+        assertEquals(1, CREATED.get());
+    }
+
+    @Test
+    public void testContextsAreReused() throws Exception {
+        final SrvLookup lookup = createLookup(4, 0);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<SrvRecord>>> futures = new ArrayList<Future<List<SrvRecord>>>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(new Callable<List<SrvRecord>>() {
+                    @Override
+                    public List<SrvRecord> call() throws Exception {
+                        return lookup.lookup("_tcp.ping");
+                    }
+                }));
+            }
+            for (Future<List<SrvRecord>> future : futures) {
+                assertEquals(3, future.get().size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(200, lookup.getLookups());
+        // a thread creates a context only when the others hold all four of the pool
+        assertTrue("Created " + CREATED.get(), CREATED.get() < 50);
+        assertEquals(CREATED.get() - 4, CLOSED.get());
+        assertTrue(lookup.getAverageLookupTime() >= 5);
+        assertTrue(lookup.getMaxLookupTime() >= lookup.getAverageLookupTime());
+
+        lookup.clear();
+        assertEquals(CREATED.get(), CLOSED.get());
+    }
+
+    @Test
+    public void testRecordsAreCached() throws Exception {
+        SrvLookup lookup = createLookup(2, 200);
+        lookup.lookup("_tcp.ping");
+        lookup.lookup("_TCP.ping");
+        assertEquals(1, QUERIES.get());
+        assertEquals(1, lookup.getCacheHits());
+
+        Thread.sleep(250);
+        lookup.lookup("_tcp.ping");
+        assertEquals(2, QUERIES.get());
+    }
+
+    @Test
+    public void testMissingRecordsAreNotCached() throws Exception {
+        SrvLookup lookup = createLookup(2, 10000);
+        assertTrue(lookup.lookup("_tcp.missing").isEmpty());
+        assertTrue(lookup.lookup("_tcp.nodata").isEmpty());
+        // i.e. the first pod of the service became ready
+        ZONE.put("_tcp.missing", Arrays.asList("10 100 8888 pod-1.ping."));
+        assertEquals(1, lookup.lookup("_tcp.missing").size());
+        assertEquals(3, QUERIES.get());
+        assertEquals(0, lookup.getCacheHits());
+    }
+
+    @Test
+    public void testMaxAge() throws Exception {
+        SrvLookup lookup = createLookup(2, 10000);
+        assertEquals(3, lookup.lookup("_tcp.ping", 0).size());
+        ZONE.put("_tcp.ping", Arrays.asList("10 100 8888 pod-2.ping."));
+        // looked up again, and cached for the callers which reuse records
+        assertEquals(1, lookup.lookup("_tcp.ping", 0).size());
+        assertEquals(1, lookup.lookup("_tcp.ping").size());
+        assertEquals(2, QUERIES.get());
+        assertEquals(1, lookup.getCacheHits());
+    }
+
+    @Test
+    public void testFailedContextIsClosed() throws Exception {
+        SrvLookup lookup = createLookup(2, 0);
+        failing = true;
+        try {
+            lookup.lookup("_tcp.ping");
+            fail("Should have failed");
+        } catch (CommunicationException expected) {
+        }
+        assertEquals(1, lookup.getLookupFailures());
+        assertEquals(1, CLOSED.get());
+
+        failing = false;
+        assertEquals(3, lookup.lookup("_tcp.ping").size());
+        assertEquals(2, CREATED.get());
+    }
+
+}
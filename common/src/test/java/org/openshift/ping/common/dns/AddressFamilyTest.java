@@ -0,0 +1,79 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+public class AddressFamilyTest {
+
+    private static InetAddress address(String address) throws Exception {
+        return InetAddress.getByName(address);
+    }
+
+    @Test
+    public void testSort() throws Exception {
+        List<InetAddress> addresses = Arrays.asList(address("10.1.0.1"), address("fd00::1"), address("10.1.0.2"), address("fd00::2"));
+        assertEquals(Arrays.asList(address("fd00::1"), address("fd00::2"), address("10.1.0.1"), address("10.1.0.2")),
+            AddressFamily.sort(addresses, AddressFamily.IPV6));
+        assertEquals(Arrays.asList(address("10.1.0.1"), address("10.1.0.2"), address("fd00::1"), address("fd00::2")),
+            AddressFamily.sort(addresses, AddressFamily.IPV4));
+        assertEquals(addresses, AddressFamily.sort(addresses, null));
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        List<InetAddress> addresses = Arrays.asList(address("10.1.0.1"), address("fd00::1"), address("10.1.0.2"));
+        assertEquals(Arrays.asList(address("10.1.0.1"), address("10.1.0.2")),
+            AddressFamily.filter(addresses, EnumSet.of(AddressFamily.IPV4)));
+        assertEquals(Arrays.asList(address("fd00::1")), AddressFamily.filter(addresses, EnumSet.of(AddressFamily.IPV6)));
+        assertEquals(addresses, AddressFamily.filter(addresses, EnumSet.allOf(AddressFamily.class)));
+    }
+
+    @Test
+    public void testReachableFrom() throws Exception {
+        assertEquals(EnumSet.of(AddressFamily.IPV4), AddressFamily.reachableFrom(address("10.1.0.1")));
+        assertEquals(EnumSet.of(AddressFamily.IPV4), AddressFamily.reachableFrom(address("0.0.0.0")));
+        assertEquals(EnumSet.of(AddressFamily.IPV6), AddressFamily.reachableFrom(address("fd00::1")));
+        // the IPv6 wildcard address is dual-stack
+        assertEquals(EnumSet.allOf(AddressFamily.class), AddressFamily.reachableFrom(address("::")));
+        assertEquals(EnumSet.allOf(AddressFamily.class), AddressFamily.reachableFrom(null));
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(AddressFamily.IPV4, AddressFamily.parse("ipv4"));
+        assertEquals(AddressFamily.IPV6, AddressFamily.parse(" IPv6 "));
+        assertNull(AddressFamily.parse(null));
+        assertNull(AddressFamily.parse(""));
+        assertNull(AddressFamily.parse("none"));
+        try {
+            AddressFamily.parse("ipx");
+            fail("Should have failed");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,302 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An in-process nameserver, over UDP and TCP on the same port, answering from records added to it. The answers
+ * to SRV queries carry the addresses of the targets in their additional section.
+ */
+public class FakeDnsServer {
+
+    public enum Mode {
+        ANSWER, TRUNCATE, SERVFAIL, SILENT
+    }
+
+    private static final class Answer {
+        private final int type;
+        private final long ttl;
+        private final byte[] data;
+        private final String target;
+
+        private Answer(int type, long ttl, byte[] data, String target) {
+            this.type = type;
+            this.ttl = ttl;
+            this.data = data;
+            this.target = target;
+        }
+    }
+
+    private final Map<String, List<Answer>> zone = new ConcurrentHashMap<String, List<Answer>>();
+    private final AtomicInteger udpQueries = new AtomicInteger();
+    private final AtomicInteger tcpQueries = new AtomicInteger();
+    private final DatagramSocket udp;
+    private final ServerSocket tcp;
+    private volatile Mode mode = Mode.ANSWER;
+    private volatile long negativeTtl = 30;
+    private volatile long delay;
+
+    public FakeDnsServer() throws IOException {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        udp = new DatagramSocket(new InetSocketAddress(loopback, 0));
+        tcp = new ServerSocket(udp.getLocalPort(), 50, loopback);
+        start(new Runnable() {
+            public void run() {
+                serveUdp();
+            }
+        });
+        start(new Runnable() {
+            public void run() {
+                serveTcp();
+            }
+        });
+    }
+
+    private static void start(Runnable runnable) {
+        Thread thread = new Thread(runnable, "FakeDnsServer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) udp.getLocalSocketAddress();
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public void setNegativeTtl(long negativeTtl) {
+        this.negativeTtl = negativeTtl;
+    }
+
+    public void setDelay(long delay) {
+        this.delay = delay;
+    }
+
+    public int getUdpQueries() {
+        return udpQueries.get();
+    }
+
+    public int getTcpQueries() {
+        return tcpQueries.get();
+    }
+
+    public void addAddress(String name, long ttl, String address) throws IOException {
+        byte[] data = InetAddress.getByName(address).getAddress();
+        add(name, new Answer(data.length == 4 ? DnsMessage.TYPE_A : DnsMessage.TYPE_AAAA, ttl, data, null));
+    }
+
+    public void addSrv(String name, long ttl, int priority, int weight, int port, String target) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(priority);
+        out.writeShort(weight);
+        out.writeShort(port);
+        writeName(out, target);
+        add(name, new Answer(DnsMessage.TYPE_SRV, ttl, bytes.toByteArray(), target));
+    }
+
+    private void add(String name, Answer answer) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        List<Answer> answers = zone.get(key);
+        if (answers == null) {
+            answers = Collections.synchronizedList(new ArrayList<Answer>());
+            zone.put(key, answers);
+        }
+        answers.add(answer);
+    }
+
+    public void clear() {
+        zone.clear();
+    }
+
+    public void close() throws IOException {
+        udp.close();
+        tcp.close();
+    }
+
+    private void serveUdp() {
+        byte[] buffer = new byte[512];
+        while (!udp.isClosed()) {
+            try {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                udp.receive(packet);
+                udpQueries.incrementAndGet();
+                if (mode == Mode.SILENT) {
+                    continue;
+                }
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                byte[] response = answer(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()), mode == Mode.TRUNCATE);
+                udp.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+            } catch (SocketException se) {
+                // closed
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void serveTcp() {
+        while (!tcp.isClosed()) {
+            try {
+                Socket socket = tcp.accept();
+                try {
+                    tcpQueries.incrementAndGet();
+                    InputStream in = socket.getInputStream();
+                    byte[] query = new byte[new DataInputStream(in).readUnsignedShort()];
+                    new DataInputStream(in).readFully(query);
+                    byte[] response = answer(ByteBuffer.wrap(query), false);
+                    OutputStream out = socket.getOutputStream();
+                    new DataOutputStream(out).writeShort(response.length);
+                    out.write(response);
+                    out.flush();
+                } finally {
+                    socket.close();
+                }
+            } catch (SocketException se) {
+                // closed
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private byte[] answer(ByteBuffer query, boolean truncate) throws IOException {
+        int id = query.getShort() & 0xFFFF;
+        query.position(12);
+        StringBuilder name = new StringBuilder();
+        for (int length = query.get(); length > 0; length = query.get()) {
+            byte[] label = new byte[length];
+            query.get(label);
+            name.append(name.length() > 0 ? "." : "").append(new String(label, "US-ASCII"));
+        }
+        int type = query.getShort() & 0xFFFF;
+
+        List<Answer> answers = new ArrayList<Answer>();
+        List<Answer> all = zone.get(name.toString().toLowerCase(Locale.ENGLISH));
+        if (all != null) {
+            synchronized (all) {
+                for (Answer answer : all) {
+                    if (answer.type == type) {
+                        answers.add(answer);
+                    }
+                }
+            }
+        }
+        List<String> glueNames = new ArrayList<String>();
+        List<Answer> glue = new ArrayList<Answer>();
+        for (Answer answer : answers) {
+            List<Answer> targetAnswers = answer.target != null ? zone.get(answer.target.replaceAll("\\.$", "").toLowerCase(Locale.ENGLISH)) : null;
+            if (targetAnswers != null) {
+                synchronized (targetAnswers) {
+                    for (Answer targetAnswer : targetAnswers) {
+                        glueNames.add(answer.target);
+                        glue.add(targetAnswer);
+                    }
+                }
+            }
+        }
+        int rcode = mode == Mode.SERVFAIL ? 2 : all == null ? DnsMessage.RCODE_NXDOMAIN : DnsMessage.RCODE_NOERROR;
+        boolean negative = rcode != 2 && answers.isEmpty();
+        if (truncate || rcode == 2) {
+            answers.clear();
+            glue.clear();
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(id);
+        out.writeShort(0x8180 | (truncate ? 0x0200 : 0) | rcode);
+        out.writeShort(1);
+        out.writeShort(answers.size());
+        out.writeShort(negative && !truncate ? 1 : 0);
+        out.writeShort(glue.size());
+        writeName(out, name.toString());
+        out.writeShort(type);
+        out.writeShort(1);
+        for (Answer answer : answers) {
+            // compressed pointer to the question name
+            out.writeShort(0xC00C);
+            out.writeShort(answer.type);
+            out.writeShort(1);
+            out.writeInt((int) answer.ttl);
+            out.writeShort(answer.data.length);
+            out.write(answer.data);
+        }
+        if (negative && !truncate) {
+            ByteArrayOutputStream soa = new ByteArrayOutputStream();
+            DataOutputStream soaOut = new DataOutputStream(soa);
+            writeName(soaOut, "ns.dns.cluster.local");
+            writeName(soaOut, "hostmaster.cluster.local");
+            soaOut.writeInt(1);
+            soaOut.writeInt(7200);
+            soaOut.writeInt(1800);
+            soaOut.writeInt(86400);
+            soaOut.writeInt((int) negativeTtl);
+            writeName(out, "cluster.local");
+            out.writeShort(DnsMessage.TYPE_SOA);
+            out.writeShort(1);
+            out.writeInt((int) negativeTtl);
+            out.writeShort(soa.size());
+            out.write(soa.toByteArray());
+        }
+        for (int i = 0; i < glue.size(); i++) {
+            writeName(out, glueNames.get(i));
+            out.writeShort(glue.get(i).type);
+            out.writeShort(1);
+            out.writeInt((int) glue.get(i).ttl);
+            out.writeShort(glue.get(i).data.length);
+            out.write(glue.get(i).data);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeName(DataOutputStream out, String name) throws IOException {
+        for (String label : name.split("\\.")) {
+            if (!label.isEmpty()) {
+                out.writeByte(label.length());
+                out.write(label.getBytes("US-ASCII"));
+            }
+        }
+        out.writeByte(0);
+    }
+
+}
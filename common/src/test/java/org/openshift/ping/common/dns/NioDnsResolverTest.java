@@ -0,0 +1,263 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.common.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openshift.ping.common.SrvRecord;
+
+public class NioDnsResolverTest {
+
+    private static final String SEARCH = "myproject.svc.cluster.local";
+
+    private FakeDnsServer server;
+    private FakeDnsServer silent;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new FakeDnsServer();
+        silent = new FakeDnsServer();
+        silent.setMode(FakeDnsServer.Mode.SILENT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+        silent.close();
+    }
+
+    private NioDnsResolver createResolver(FakeDnsServer... servers) {
+        return createResolver(500, servers);
+    }
+
+    private NioDnsResolver createResolver(int timeout, FakeDnsServer... servers) {
+        InetSocketAddress[] nameservers = new InetSocketAddress[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            nameservers[i] = servers[i].getAddress();
+        }
+        return new NioDnsResolver(Arrays.asList(nameservers), Collections.singletonList(SEARCH), 5, timeout, 2);
+    }
+
+    @Test
+    public void testAddressesAreCachedForTheirTtl() throws Exception {
+        server.addAddress("ping." + SEARCH, 30, "fd00::1");
+        server.addAddress("ping." + SEARCH, 30, "10.1.0.1");
+        server.addAddress("ping." + SEARCH, 30, "10.1.0.2");
+        NioDnsResolver resolver = createResolver(server);
+
+        List<InetAddress> addresses = resolver.getAddresses("ping");
+        assertEquals(Arrays.asList(InetAddress.getByName("10.1.0.1"), InetAddress.getByName("10.1.0.2"),
+            InetAddress.getByName("fd00::1")), addresses);
+        // A and AAAA of the first search name
+        assertEquals(2, server.getUdpQueries());
+
+        assertEquals(addresses, resolver.getAddresses("ping"));
+        assertEquals(2, server.getUdpQueries());
+        assertEquals(2, resolver.getCacheHits());
+    }
+
+    @Test
+    public void testOnlyTheGivenFamiliesAreQueried() throws Exception {
+        server.addAddress("ping." + SEARCH, 30, "fd00::1");
+        server.addAddress("ping." + SEARCH, 30, "10.1.0.1");
+        NioDnsResolver resolver = createResolver(server);
+
+        assertEquals(Arrays.asList(InetAddress.getByName("10.1.0.1")),
+            resolver.getAddresses("ping", EnumSet.of(AddressFamily.IPV4)));
+        assertEquals(1, server.getUdpQueries());
+        assertEquals(Arrays.asList(InetAddress.getByName("fd00::1")),
+            resolver.getAddresses("ping", EnumSet.of(AddressFamily.IPV6)));
+        assertEquals(2, server.getUdpQueries());
+
+        // both answers are cached now
+        resolver.getAddresses("ping");
+        assertEquals(2, server.getUdpQueries());
+    }
+
+    @Test
+    public void testZeroTtlIsNotCached() throws Exception {
+        server.addAddress("ping." + SEARCH, 0, "10.1.0.1");
+        NioDnsResolver resolver = createResolver(server);
+        server.setNegativeTtl(0);
+
+        resolver.getAddresses("ping");
+        resolver.getAddresses("ping");
+        assertEquals(4, server.getUdpQueries());
+    }
+
+    @Test
+    public void testTtlExpiry() throws Exception {
+        server.addAddress("ping." + SEARCH, 1, "10.1.0.1");
+        server.setNegativeTtl(1);
+        NioDnsResolver resolver = createResolver(server);
+
+        resolver.getAddresses("ping");
+        server.clear();
+        server.addAddress("ping." + SEARCH, 1, "10.1.0.2");
+        assertEquals(Collections.singletonList(InetAddress.getByName("10.1.0.1")), resolver.getAddresses("ping"));
+        Thread.sleep(1100);
+        assertEquals(Collections.singletonList(InetAddress.getByName("10.1.0.2")), resolver.getAddresses("ping"));
+    }
+
+    @Test
+    public void testNegativeAnswersAreCached() throws Exception {
+        server.setNegativeTtl(30);
+        NioDnsResolver resolver = createResolver(server);
+
+        assertTrue(resolver.getAddresses("missing").isEmpty());
+        // the search name, then the name itself
+        assertEquals(4, server.getUdpQueries());
+        assertTrue(resolver.getAddresses("missing").isEmpty());
+        assertEquals(4, server.getUdpQueries());
+    }
+
+    @Test
+    public void testSearch() throws Exception {
+        server.addAddress("ping.other.svc.cluster.local", 30, "10.1.0.3");
+        server.addAddress("ping.other.svc.cluster.local." + SEARCH, 30, "10.9.9.9");
+        NioDnsResolver resolver = createResolver(server);
+
+        assertEquals(Arrays.asList(InetAddress.getByName("10.1.0.3")), resolver.getAddresses("ping.other.svc.cluster.local."));
+        assertEquals(Arrays.asList(InetAddress.getByName("10.9.9.9")), resolver.getAddresses("ping.other.svc.cluster.local"));
+        assertEquals(Arrays.asList("a.b.c.d.e.f", "a.b.c.d.e.f." + SEARCH), resolver.getSearchNames("a.b.c.d.e.f"));
+        assertEquals(Arrays.asList("ping." + SEARCH, "ping"), resolver.getSearchNames("ping"));
+    }
+
+    @Test
+    public void testNameserversAreQueriedInParallel() throws Exception {
+        server.addAddress("ping." + SEARCH, 30, "10.1.0.1");
+        NioDnsResolver resolver = createResolver(2000, silent, server);
+
+        long start = System.nanoTime();
+        assertEquals(Arrays.asList(InetAddress.getByName("10.1.0.1")), resolver.getAddresses("ping"));
+        long millis = (System.nanoTime() - start) / 1000000;
+        // not waiting for the silent nameserver to time out
+        assertTrue("Took " + millis + "ms", millis < 1000);
+        for (int i = 0; i < 100 && silent.getUdpQueries() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, silent.getUdpQueries());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        NioDnsResolver resolver = createResolver(silent);
+        try {
+            resolver.getAddresses("ping");
+            fail("Should have timed out");
+        } catch (SocketTimeoutException expected) {
+        }
+        // A and AAAA, two attempts
+        assertEquals(4, silent.getUdpQueries());
+    }
+
+    @Test
+    public void testServerFailure() throws Exception {
+        server.setMode(FakeDnsServer.Mode.SERVFAIL);
+        NioDnsResolver resolver = createResolver(server);
+        try {
+            resolver.getAddresses("ping");
+            fail("Should have failed");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("rcode [2]"));
+        }
+    }
+
+    @Test
+    public void testTruncatedAnswerIsReadOverTcp() throws Exception {
+        server.setMode(FakeDnsServer.Mode.TRUNCATE);
+        server.addAddress("ping." + SEARCH, 30, "10.1.0.1");
+        server.addAddress("ping." + SEARCH, 30, "10.1.0.2");
+        NioDnsResolver resolver = createResolver(server);
+
+        assertEquals(Arrays.asList(InetAddress.getByName("10.1.0.1"), InetAddress.getByName("10.1.0.2")),
+            resolver.getAddresses("ping"));
+        assertEquals(2, server.getTcpQueries());
+    }
+
+    @Test
+    public void testSrv() throws Exception {
+        server.addSrv("_tcp.ping." + SEARCH, 30, 10, 50, 8888, "pod-1.ping." + SEARCH + ".");
+        NioDnsResolver resolver = createResolver(server);
+
+        List<Object> records = resolver.lookup("_tcp.ping", DnsMessage.TYPE_SRV);
+        assertEquals(1, records.size());
+        SrvRecord record = (SrvRecord) records.get(0);
+        assertEquals(8888, record.getPort());
+        assertEquals("pod-1.ping." + SEARCH, record.getHost());
+    }
+
+    @Test
+    public void testSrvTargetsAreResolvedFromTheAdditionalSection() throws Exception {
+        server.addSrv("_tcp.ping." + SEARCH, 30, 10, 50, 7800, "pod-1.ping." + SEARCH + ".");
+        server.addSrv("_tcp.ping." + SEARCH, 30, 10, 100, 7801, "pod-2.ping." + SEARCH + ".");
+        server.addSrv("_tcp.ping." + SEARCH, 30, 20, 100, 7802, "pod-3.ping." + SEARCH + ".");
+        server.addAddress("pod-1.ping." + SEARCH, 30, "10.1.0.1");
+        server.addAddress("pod-2.ping." + SEARCH, 30, "10.1.0.2");
+        server.addAddress("pod-3.ping." + SEARCH, 30, "10.1.0.3");
+        server.addAddress("pod-3.ping." + SEARCH, 30, "fd00::3");
+        NioDnsResolver resolver = createResolver(server);
+
+        List<SrvRecord> records = resolver.getSrvRecords("_tcp.ping");
+        assertEquals(Arrays.asList(
+            new SrvRecord(10, 100, 7801, "pod-2.ping." + SEARCH),
+            new SrvRecord(10, 50, 7800, "pod-1.ping." + SEARCH),
+            new SrvRecord(20, 100, 7802, "pod-3.ping." + SEARCH)), records);
+        assertEquals(Arrays.asList(InetAddress.getByName("10.1.0.2")), resolver.getAddresses("pod-2.ping." + SEARCH + "."));
+        assertEquals(Arrays.asList(InetAddress.getByName("10.1.0.3"), InetAddress.getByName("fd00::3")),
+            resolver.getAddresses("pod-3.ping." + SEARCH + "."));
+        // the SRV query only
+        assertEquals(1, server.getUdpQueries());
+
+        assertTrue(resolver.getSrvRecords("_tcp.missing").isEmpty());
+    }
+
+    @Test
+    public void testResolvConf() throws Exception {
+        NioDnsResolver resolver = NioDnsResolver.fromResolvConf(new StringReader(
+            "# generated\n" +
+            "nameserver 172.30.0.10\n" +
+            "nameserver fd00::10\n" +
+            "search myproject.svc.cluster.local svc.cluster.local cluster.local\n" +
+            "options ndots:5 timeout:1\n"));
+        assertEquals(Arrays.asList(new InetSocketAddress("172.30.0.10", 53), new InetSocketAddress("fd00::10", 53)),
+            resolver.getNameservers());
+        assertEquals(Arrays.asList("myproject.svc.cluster.local", "svc.cluster.local", "cluster.local"), resolver.getSearchDomains());
+        assertEquals(5, resolver.getNdots());
+
+        resolver = NioDnsResolver.fromResolvConf(new StringReader("domain example.com\n"));
+        assertEquals(Arrays.asList(new InetSocketAddress("127.0.0.1", 53)), resolver.getNameservers());
+        assertEquals(Arrays.asList("example.com"), resolver.getSearchDomains());
+        assertEquals(1, resolver.getNdots());
+    }
+
+}
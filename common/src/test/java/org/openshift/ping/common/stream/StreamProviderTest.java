@@ -21,9 +21,18 @@ import static org.junit.Assert.assertTrue;
 
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
 import java.security.cert.X509Certificate;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import org.junit.Test;
 
 /**
@@ -46,6 +55,44 @@ public class StreamProviderTest {
         testConfigureCaCert(CertificateStreamProvider.configureCaCert(CA_FILE));
     }
 
+    @Test
+    public void testKeepAlive() throws Exception {
+        final Set<Integer> clientPorts = new HashSet<Integer>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (clientPorts) {
+                    clientPorts.add(exchange.getRemoteAddress().getPort());
+                }
+                byte[] body = "{\"items\": []}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(exchange.getRequestURI().getPath().equals("/missing") ? 404 : 200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort();
+            StreamProvider streamProvider = new DefaultStreamProvider();
+            for (int i = 0; i < 3; i++) {
+                // the body is not read to the end
+                try (InputStream stream = streamProvider.openStream(url + "/pods", null, 1000, 1000)) {
+                    assertEquals('{', stream.read());
+                }
+                try {
+                    streamProvider.openStream(url + "/missing", null, 1000, 1000).close();
+                } catch (HttpStatusException expected) {
+                    assertEquals(404, expected.getStatus());
+                }
+            }
+        } finally {
+            server.stop(0);
+        }
+        assertEquals(1, clientPorts.size());
+    }
+
     private static void testConfigureCaCert(TrustManager[] trustManagers) {
         assertEquals(1, trustManagers.length);
         X509TrustManager trustManager = (X509TrustManager) trustManagers[0];
@@ -18,6 +18,7 @@ package org.openshift.ping.dns;
 
 import static org.openshift.ping.common.Utils.execute;
 import static org.openshift.ping.common.Utils.getSystemEnv;
+import static org.openshift.ping.common.Utils.getSystemEnvBoolean;
 import static org.openshift.ping.common.Utils.getSystemEnvInt;
 
 import java.net.InetSocketAddress;
@@ -25,12 +26,29 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.Property;
 import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.protocols.TP;
+import org.openshift.ping.common.CircuitBreakerOpenException;
 import org.openshift.ping.common.OpenshiftPing;
+import org.openshift.ping.common.SrvLookup;
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+import org.openshift.ping.common.dns.DnsResolvers;
+import org.openshift.ping.common.dns.NioDnsResolver;
 
+/**
+ * Discovers the members off the DNS records of a headless service.
+ * <p/>
+ * The jdk resolver reads the SRV records through JNDI, which does not expose their TTLs. So that SRV discovery
+ * sees new and gone pods with the next round, it looks them up every time; srvCacheTtl lets it reuse them for
+ * up to that many milliseconds instead, at the price of seeing the changes up to that late. The lack of
+ * records is never reused. The nio resolver honours the TTLs of the records.
+ */
 @MBean(description = "DNS based discovery protocol")
 public class DnsPing extends OpenshiftPing {
 
@@ -48,10 +66,41 @@ public class DnsPing extends OpenshiftPing {
     private int servicePort;
     private int _servicePort;
 
+    @Property
+    private String resolver = "jdk";
+    private DnsResolver _resolver;
+
+    @Property
+    private long srvCacheTtl = 0;
+
+    @Property
+    private boolean srvDiscovery = false;
+    private boolean _srvDiscovery;
+
+    @Property
+    private String preferredAddressFamily;
+    private AddressFamily _preferredAddressFamily;
+
     public DnsPing() {
         super("OPENSHIFT_DNS_PING_");
     }
 
+    /**
+     * @param resolver the default of the resolver property
+     */
+    protected DnsPing(String resolver) {
+        this();
+        this.resolver = resolver;
+    }
+
+    protected final String getServiceName() {
+        return _serviceName;
+    }
+
+    protected final DnsResolver getResolver() {
+        return _resolver;
+    }
+
     @Override
     protected boolean isClusteringEnabled() {
         return _serviceName != null;
@@ -76,13 +125,47 @@ public class DnsPing extends OpenshiftPing {
         if (log.isInfoEnabled()) {
             log.info(String.format("serviceName [%s] set; clustering enabled", _serviceName));
         }
-        _servicePort = getServicePort();
+        _resolver = createResolver(getSystemEnv(getSystemEnvName("RESOLVER"), resolver, true));
+        _srvDiscovery = getSystemEnvBoolean(getSystemEnvName("SRV_DISCOVERY"), srvDiscovery);
+        _preferredAddressFamily = AddressFamily.parse(
+            getSystemEnv(getSystemEnvName("PREFERRED_ADDRESS_FAMILY"), preferredAddressFamily, true));
+        if (_srvDiscovery) {
+            // every host comes with its own port
+            _servicePort = Math.max(0, getSystemEnvInt(getSystemEnvName("SERVICE_PORT"), servicePort));
+            if (log.isInfoEnabled()) {
+                log.info(String.format("Discovering the hosts and ports of service [%s] by its SRV records", _serviceName));
+            }
+        } else {
+            _servicePort = getServicePort();
+        }
+    }
+
+    private DnsResolver createResolver(String name) throws Exception {
+        long srvTtl = (long) getSystemEnvInt(getSystemEnvName("SRV_CACHE_TTL"), (int) srvCacheTtl);
+        DnsResolver dnsResolver = DnsResolvers.create(name, DnsPing.class.getClassLoader(), srvTtl);
+        if (dnsResolver instanceof NioDnsResolver && log.isInfoEnabled()) {
+            NioDnsResolver nioResolver = (NioDnsResolver) dnsResolver;
+            log.info(String.format("Resolving [%s] through nameservers %s with search domains %s",
+                _serviceName, nioResolver.getNameservers(), nioResolver.getSearchDomains()));
+        }
+        return dnsResolver;
+    }
+
+    /**
+     * @return the families of the addresses the transport can send to, given the address it is bound to
+     */
+    private Set<AddressFamily> getAddressFamilies() {
+        TP transport = getTransport();
+        return AddressFamily.reachableFrom(transport != null ? transport.getBindAddress() : null);
     }
 
     @Override
     public void destroy() {
         _serviceName = null;
         _servicePort = 0;
+        _resolver = null;
+        _srvDiscovery = false;
+        _preferredAddressFamily = null;
         super.destroy();
     }
 
@@ -91,7 +174,7 @@ public class DnsPing extends OpenshiftPing {
         if (svcPort < 1) {
             svcPort = servicePort;
             if (svcPort < 1) {
-                Integer dnsPort = execute(new GetServicePort(_serviceName), getOperationAttempts(), getOperationSleep());
+                Integer dnsPort = execute(new GetServicePort(_serviceName), getRetryPolicy());
                 if (dnsPort != null) {
                     svcPort = dnsPort.intValue();
                 } else if (log.isWarnEnabled()) {
@@ -105,8 +188,19 @@ public class DnsPing extends OpenshiftPing {
         return svcPort;
     }
 
-    private Set<String> getServiceHosts() {
-        Set<String> svcHosts = execute(new GetServiceHosts(_serviceName), getOperationAttempts(), getOperationSleep());
+    /**
+     * @return the lookup of the addresses of the members, null if none was found
+     */
+    protected Callable<Set<String>> createGetServiceHosts(String serviceName, DnsResolver dnsResolver,
+            Set<AddressFamily> families, AddressFamily preferredFamily) {
+        return new GetServiceHosts(serviceName, dnsResolver, families, preferredFamily);
+    }
+
+    private Set<String> getServiceHosts() throws CircuitBreakerOpenException {
+        Set<String> svcHosts = execute(createGetServiceHosts(_serviceName, _resolver, getAddressFamilies(), _preferredAddressFamily), getRetryPolicy());
+        if (svcHosts == null && isCircuitBreakerOpen()) {
+            throw new CircuitBreakerOpenException(String.format("DNS lookups of service [%s] keep failing", _serviceName));
+        }
         if (svcHosts == null) {
             svcHosts = Collections.emptySet();
             if (log.isWarnEnabled()) {
@@ -116,8 +210,65 @@ public class DnsPing extends OpenshiftPing {
         return svcHosts;
     }
 
+    @ManagedAttribute(description = "The DNS answers served from the cache of the nio resolver")
+    public long getDnsCacheHits() {
+        DnsResolver dnsResolver = _resolver;
+        return dnsResolver instanceof NioDnsResolver ? ((NioDnsResolver) dnsResolver).getCacheHits() : 0;
+    }
+
+    @ManagedAttribute(description = "The DNS answers the nio resolver had to query for")
+    public long getDnsCacheMisses() {
+        DnsResolver dnsResolver = _resolver;
+        return dnsResolver instanceof NioDnsResolver ? ((NioDnsResolver) dnsResolver).getCacheMisses() : 0;
+    }
+
+    @ManagedAttribute(description = "The DNS SRV lookups of the JVM which were not answered from the cache")
+    public long getSrvLookups() {
+        return SrvLookup.getDefault().getLookups();
+    }
+
+    @ManagedAttribute(description = "The average time of the DNS SRV lookups of the JVM, in milliseconds")
+    public double getSrvLookupAverageTime() {
+        return SrvLookup.getDefault().getAverageLookupTime();
+    }
+
+    @ManagedAttribute(description = "The longest time of a DNS SRV lookup of the JVM, in milliseconds")
+    public double getSrvLookupMaxTime() {
+        return SrvLookup.getDefault().getMaxLookupTime();
+    }
+
+    /**
+     * With SRV discovery, the hosts are read together with their ports off the SRV records of the service, the
+     * ports being the transport ports of the members.
+     */
+    @Override
+    protected boolean isHostPortTransportPort() {
+        return _srvDiscovery;
+    }
+
+    private List<InetSocketAddress> getServiceTargets() throws CircuitBreakerOpenException {
+        List<InetSocketAddress> svcTargets = execute(new GetServiceTargets(_serviceName, _resolver, getAddressFamilies(), _preferredAddressFamily), getRetryPolicy());
+        if (svcTargets == null && isCircuitBreakerOpen()) {
+            throw new CircuitBreakerOpenException(String.format("DNS lookups of service [%s] keep failing", _serviceName));
+        }
+        if (svcTargets == null) {
+            svcTargets = Collections.emptyList();
+            if (log.isWarnEnabled()) {
+                log.warn(String.format("No SRV records found for service [%s]; continuing...", _serviceName));
+            }
+        }
+        return svcTargets;
+    }
+
     @Override
-    protected synchronized List<InetSocketAddress> doReadAll(String clusterName) {
+    protected synchronized List<InetSocketAddress> doReadAll(String clusterName) throws CircuitBreakerOpenException {
+        if (_srvDiscovery) {
+            List<InetSocketAddress> serviceTargets = getServiceTargets();
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Reading service targets %s", serviceTargets));
+            }
+            return serviceTargets;
+        }
         Set<String> serviceHosts = getServiceHosts();
         if (log.isDebugEnabled()) {
             log.debug(String.format("Reading service hosts %s on port [%s]", serviceHosts, _servicePort));
@@ -1,22 +1,46 @@
 package org.openshift.ping.dns;
 
 import java.net.InetAddress;
+import java.util.EnumSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+import org.openshift.ping.common.dns.JdkDnsResolver;
+
 public class GetServiceHosts implements Callable<Set<String>> {
 
     private final String _serviceName;
+    private final DnsResolver _resolver;
+    private final Set<AddressFamily> _families;
+    private final AddressFamily _preferredFamily;
 
     public GetServiceHosts(String serviceName) {
+        this(serviceName, new JdkDnsResolver());
+    }
+
+    public GetServiceHosts(String serviceName, DnsResolver resolver) {
+        this(serviceName, resolver, EnumSet.allOf(AddressFamily.class), null);
+    }
+
+    /**
+     * @param families the families of the hosts wanted
+     * @param preferredFamily the family of the hosts to return first, null for the order of the resolver
+     */
+    public GetServiceHosts(String serviceName, DnsResolver resolver, Set<AddressFamily> families, AddressFamily preferredFamily) {
         _serviceName = serviceName;
+        _resolver = resolver;
+        _families = families;
+        _preferredFamily = preferredFamily;
     }
 
     @Override
     public Set<String> call() throws Exception {
         Set<String> serviceHosts = null;
-        InetAddress[] inetAddresses = InetAddress.getAllByName(_serviceName);
+        List<InetAddress> inetAddresses = AddressFamily.sort(_resolver.getAddresses(_serviceName, _families), _preferredFamily);
         for (InetAddress inetAddress : inetAddresses) {
             if (serviceHosts == null) {
                 serviceHosts = new LinkedHashSet<String>();
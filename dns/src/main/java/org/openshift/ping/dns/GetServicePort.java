@@ -1,60 +1,38 @@
 package org.openshift.ping.dns;
 
-import java.util.Hashtable;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.List;
 import java.util.concurrent.Callable;
 
-import javax.naming.Context;
-import javax.naming.NamingEnumeration;
-import javax.naming.directory.Attributes;
-import javax.naming.directory.DirContext;
-import javax.naming.directory.InitialDirContext;
+import org.openshift.ping.common.SrvLookup;
+import org.openshift.ping.common.SrvRecord;
 
 public class GetServicePort implements Callable<Integer> {
 
     private final String _serviceName;
+    private final SrvLookup _srvLookup;
 
     public GetServicePort(String serviceName) {
+        this(serviceName, SrvLookup.getDefault());
+    }
+
+    public GetServicePort(String serviceName, SrvLookup srvLookup) {
         _serviceName = serviceName;
+        _srvLookup = srvLookup;
     }
 
     @Override
     public Integer call() throws Exception {
-        Set<DnsRecord> dnsRecords = getDnsRecords(_serviceName);
-        for (DnsRecord dnsRecord : dnsRecords) {
+        List<SrvRecord> srvRecords = _srvLookup.lookup("_tcp." + _serviceName);
+        for (SrvRecord srvRecord : srvRecords) {
             /*
-            if (serviceName.equals(dnsRecord.getHost())) {
-                return dnsRecord.getPort();
+            if (serviceName.equals(srvRecord.getHost())) {
+                return srvRecord.getPort();
             }
             */
             // they should all match, even if individual names are different
-            return dnsRecord.getPort();
+            return srvRecord.getPort();
         }
         return null;
     }
 
-    private Set<DnsRecord> getDnsRecords(String serviceName) throws Exception {
-        Set<DnsRecord> dnsRecords = new TreeSet<DnsRecord>();
-        Hashtable<String, String> env = new Hashtable<String, String>();
-        env.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
-        env.put(Context.PROVIDER_URL, "dns:");
-        env.put("com.sun.jndi.dns.recursion", "false");
-        // default is one second, but os skydns can be slow
-        env.put("com.sun.jndi.dns.timeout.initial", "2000");
-        // retries handled by DnsPing
-        //env.put("com.sun.jndi.dns.timeout.retries", "4");
-        DirContext ctx = new InitialDirContext(env);
-        Attributes attrs = ctx.getAttributes("_tcp." + serviceName, new String[]{"SRV"});
-        if (attrs == null) {
-            return dnsRecords;
-        }
-        NamingEnumeration<?> servers = attrs.get("SRV").getAll();
-        while (servers.hasMore()) {
-            DnsRecord record = DnsRecord.fromString((String)servers.next());
-            dnsRecords.add(record);
-        }
-        return dnsRecords;
-    }
-
 }
@@ -0,0 +1,75 @@
+package org.openshift.ping.dns;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openshift.ping.common.SrvRecord;
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+
+/**
+ * Reads the hosts of a service together with their ports off the SRV records of the service.
+ */
+public class GetServiceTargets implements Callable<List<InetSocketAddress>> {
+    private static final Logger log = Logger.getLogger(GetServiceTargets.class.getName());
+
+    private final String _serviceName;
+    private final DnsResolver _resolver;
+    private final Set<AddressFamily> _families;
+    private final AddressFamily _preferredFamily;
+
+    public GetServiceTargets(String serviceName, DnsResolver resolver) {
+        this(serviceName, resolver, EnumSet.allOf(AddressFamily.class), null);
+    }
+
+    /**
+     * @param families the families of the target addresses wanted
+     * @param preferredFamily the family of the addresses to return first for each target, null for the order of
+     *                        the resolver
+     */
+    public GetServiceTargets(String serviceName, DnsResolver resolver, Set<AddressFamily> families, AddressFamily preferredFamily) {
+        _serviceName = serviceName;
+        _resolver = resolver;
+        _families = families;
+        _preferredFamily = preferredFamily;
+    }
+
+    /**
+     * @return the addresses of the targets of the records with the ports of the records, by priority and weight;
+     *         null if the service has no records
+     */
+    @Override
+    public List<InetSocketAddress> call() throws Exception {
+        List<SrvRecord> srvRecords = _resolver.getSrvRecords("_tcp." + _serviceName);
+        if (srvRecords.isEmpty()) {
+            return null;
+        }
+        Set<InetSocketAddress> targets = new LinkedHashSet<InetSocketAddress>();
+        for (SrvRecord srvRecord : srvRecords) {
+            List<InetAddress> addresses;
+            try {
+                // the targets are absolute names
+                addresses = AddressFamily.sort(_resolver.getAddresses(srvRecord.getHost() + ".", _families), _preferredFamily);
+            } catch (Exception e) {
+                // i.e. a pod which is gone already
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine(String.format("Skipping target [%s] of service [%s]: %s", srvRecord.getHost(), _serviceName, e));
+                }
+                continue;
+            }
+            for (InetAddress address : addresses) {
+                targets.add(new InetSocketAddress(address, srvRecord.getPort()));
+            }
+        }
+        return new ArrayList<InetSocketAddress>(targets);
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+
+/**
+ * Resolves the pods of a StatefulSet by their hostnames - name-0.service, name-1.service, ... - concurrently,
+ * rather than all the addresses of the service in one answer, which is slow to build and truncated over UDP
+ * beyond some 30 records.
+ * <p/>
+ * The ordinals are resolved as many at a time as there are threads, up to the replicas. As the pods of a
+ * StatefulSet are numbered from 0, the lookup stops at the first run of missing ordinals; the pods past a
+ * shorter gap, e.g. one being replaced, are still found. The answers, negative ones included, are cached by
+ * the resolver, for their TTL with the nio resolver.
+ */
+public class ParallelOrdinalResolver {
+    private static final Logger log = Logger.getLogger(ParallelOrdinalResolver.class.getName());
+
+    private final String statefulSetName;
+    private final String serviceName;
+    private final int replicas;
+    private final int maxMissing;
+    private final int threads;
+    private final DnsResolver resolver;
+    private final ExecutorService executor;
+
+    /**
+     * @param replicas the ordinals to resolve at most
+     * @param maxMissing the missing ordinals in a row after which the lookup stops
+     * @param threads the maximum number of ordinals resolved at the same time
+     */
+    public ParallelOrdinalResolver(String statefulSetName, String serviceName, int replicas, int maxMissing, int threads, DnsResolver resolver) {
+        this.statefulSetName = statefulSetName;
+        this.serviceName = serviceName;
+        this.replicas = replicas;
+        this.maxMissing = Math.max(1, maxMissing);
+        this.threads = Math.max(1, Math.min(threads, replicas));
+        this.resolver = resolver;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ParallelOrdinalResolver-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public String getHostname(int ordinal) {
+        return statefulSetName + "-" + ordinal + "." + serviceName;
+    }
+
+    /**
+     * @param families the families of the addresses wanted
+     * @param preferredFamily the family of the addresses to return first for each pod, null for the order of the
+     *                        resolver
+     * @return the addresses of the pods by ordinal, empty if none was found
+     * @throws Exception the failure of the lookup of an ordinal, other than its name not being found
+     */
+    public Set<String> getHosts(final Set<AddressFamily> families, AddressFamily preferredFamily) throws Exception {
+        Set<String> hosts = new LinkedHashSet<String>();
+        int missing = 0;
+        int ordinal = 0;
+        while (ordinal < replicas && missing < maxMissing) {
+            List<Future<List<InetAddress>>> futures = new ArrayList<Future<List<InetAddress>>>(threads);
+            for (int last = Math.min(replicas, ordinal + threads); ordinal < last; ordinal++) {
+                final String hostname = getHostname(ordinal);
+                futures.add(executor.submit(new Callable<List<InetAddress>>() {
+                    public List<InetAddress> call() throws Exception {
+                        try {
+                            return resolver.getAddresses(hostname, families);
+                        } catch (UnknownHostException uhe) {
+                            // not found, with the jdk resolver
+                            return Collections.emptyList();
+                        }
+                    }
+                }));
+            }
+            try {
+                for (int i = 0; i < futures.size() && missing < maxMissing; i++) {
+                    List<InetAddress> addresses;
+                    try {
+                        addresses = futures.get(i).get();
+                    } catch (ExecutionException ee) {
+                        throw ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+                    }
+                    if (addresses.isEmpty()) {
+                        missing++;
+                        continue;
+                    }
+                    missing = 0;
+                    for (InetAddress address : AddressFamily.sort(addresses, preferredFamily)) {
+                        hosts.add(address.getHostAddress());
+                    }
+                }
+            } finally {
+                for (Future<List<InetAddress>> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("Resolved %s addresses of the pods of StatefulSet [%s]", hosts.size(), statefulSetName));
+        }
+        return hosts;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
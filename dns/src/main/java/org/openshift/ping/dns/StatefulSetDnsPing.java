@@ -0,0 +1,129 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.dns;
+
+import static org.openshift.ping.common.Utils.getSystemEnv;
+import static org.openshift.ping.common.Utils.getSystemEnvInt;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.Property;
+import org.jgroups.conf.ClassConfigurator;
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+
+/**
+ * Discovers the pods of a StatefulSet behind a headless service by resolving their hostnames, name-0.service,
+ * name-1.service, ..., concurrently with a {@link ParallelOrdinalResolver}, instead of all the addresses of the
+ * service at once. Resolves with the nio resolver by default, for the answers to be cached for their TTL.
+ */
+@MBean(description = "DNS based discovery protocol resolving the pods of a StatefulSet by their ordinals")
+public class StatefulSetDnsPing extends DnsPing {
+
+    public static final short OPENSHIFT_STATEFULSET_DNS_PING_ID = 2022;
+    public static final short JGROUPS_STATEFULSET_DNS_PING_ID = 2023;
+    static {
+        ClassConfigurator.addProtocol(OPENSHIFT_STATEFULSET_DNS_PING_ID, StatefulSetDnsPing.class);
+    }
+
+    private static final Pattern POD_NAME = Pattern.compile("(.+)-\\d+");
+
+    @Property
+    private String statefulSetName; // defaults to the name of this pod without its ordinal
+    private ParallelOrdinalResolver _ordinalResolver;
+
+    @Property
+    private int replicas = 32;
+
+    @Property
+    private int maxMissingOrdinals = 3;
+
+    @Property
+    private int ordinalThreads = 8;
+
+    public StatefulSetDnsPing() {
+        super("nio");
+    }
+
+    @Override
+    public void init() throws Exception {
+        super.init();
+        if (getServiceName() == null) {
+            return;
+        }
+        String name = getSystemEnv(getSystemEnvName("STATEFULSET_NAME"), statefulSetName, true);
+        if (name == null) {
+            name = getStatefulSetName(getSystemEnv("HOSTNAME"));
+        }
+        if (name == null) {
+            if (log.isWarnEnabled()) {
+                log.warn(String.format("statefulSetName not set; resolving all the addresses of service [%s] instead", getServiceName()));
+            }
+            return;
+        }
+        int maxReplicas = getSystemEnvInt(getSystemEnvName("REPLICAS"), replicas);
+        int maxMissing = getSystemEnvInt(getSystemEnvName("MAX_MISSING_ORDINALS"), maxMissingOrdinals);
+        int threads = getSystemEnvInt(getSystemEnvName("ORDINAL_THREADS"), ordinalThreads);
+        _ordinalResolver = new ParallelOrdinalResolver(name, getServiceName(), maxReplicas, maxMissing, threads, getResolver());
+        if (log.isInfoEnabled()) {
+            log.info(String.format("Resolving up to %s pods of StatefulSet [%s] as [%s]", maxReplicas, name, _ordinalResolver.getHostname(0)));
+        }
+    }
+
+    /**
+     * @param hostname the hostname of a pod of a StatefulSet, its name, e.g. name-0
+     * @return the name of the StatefulSet, null if the hostname is not the one of such a pod
+     */
+    static String getStatefulSetName(String hostname) {
+        if (hostname == null) {
+            return null;
+        }
+        int dot = hostname.indexOf('.');
+        Matcher matcher = POD_NAME.matcher(dot < 0 ? hostname : hostname.substring(0, dot));
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    @Override
+    public void destroy() {
+        if (_ordinalResolver != null) {
+            _ordinalResolver.shutdown();
+            _ordinalResolver = null;
+        }
+        super.destroy();
+    }
+
+    @Override
+    protected Callable<Set<String>> createGetServiceHosts(String serviceName, DnsResolver dnsResolver,
+            final Set<AddressFamily> families, final AddressFamily preferredFamily) {
+        final ParallelOrdinalResolver ordinalResolver = _ordinalResolver;
+        if (ordinalResolver == null) {
+            return super.createGetServiceHosts(serviceName, dnsResolver, families, preferredFamily);
+        }
+        return new Callable<Set<String>>() {
+            @Override
+            public Set<String> call() throws Exception {
+                Set<String> hosts = ordinalResolver.getHosts(families, preferredFamily);
+                return hosts.isEmpty() ? null : hosts;
+            }
+        };
+    }
+
+}
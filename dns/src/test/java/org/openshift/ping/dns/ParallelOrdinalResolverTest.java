@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openshift.ping.common.SrvRecord;
+import org.openshift.ping.common.dns.AddressFamily;
+import org.openshift.ping.common.dns.DnsResolver;
+
+public class ParallelOrdinalResolverTest {
+
+    private static final Set<AddressFamily> ALL = EnumSet.allOf(AddressFamily.class);
+
+    private final Map<String, List<InetAddress>> zone = new ConcurrentHashMap<String, List<InetAddress>>();
+    private final Set<String> queried = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private volatile boolean failing;
+    private ParallelOrdinalResolver resolver;
+
+    /**
+     * Answers from the zone like the jdk resolver does, taking a while to.
+     */
+    private final DnsResolver dnsResolver = new DnsResolver() {
+        @Override
+        public List<InetAddress> getAddresses(String name) throws Exception {
+            return getAddresses(name, ALL);
+        }
+
+        @Override
+        public List<InetAddress> getAddresses(String name, Set<AddressFamily> families) throws Exception {
+            queried.add(name);
+            int current = concurrent.incrementAndGet();
+            try {
+                while (current > maxConcurrent.get() && !maxConcurrent.compareAndSet(maxConcurrent.get(), current)) {
+                }
+                Thread.sleep(20);
+                if (failing) {
+                    throw new SocketTimeoutException("DNS timeout");
+                }
+                List<InetAddress> addresses = zone.get(name);
+                if (addresses == null) {
+                    throw new UnknownHostException(name);
+                }
+                return AddressFamily.filter(addresses, families);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+
+        @Override
+        public List<SrvRecord> getSrvRecords(String name) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            zone.put("web-" + i + ".ping", Arrays.asList(InetAddress.getByName("10.1.0." + i)));
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+    }
+
+    private static Set<String> hosts(int... ordinals) {
+        Set<String> hosts = new java.util.LinkedHashSet<String>();
+        for (int ordinal : ordinals) {
+            hosts.add("10.1.0." + ordinal);
+        }
+        return hosts;
+    }
+
+    @Test
+    public void testOrdinalsAreResolvedConcurrently() throws Exception {
+        resolver = new ParallelOrdinalResolver("web", "ping", 32, 3, 4, dnsResolver);
+        assertEquals(hosts(0, 1, 2, 3, 4), resolver.getHosts(ALL, null));
+        assertEquals(4, maxConcurrent.get());
+        // the batch past the last pod holds the run of missing ordinals
+        assertEquals(8, queried.size());
+    }
+
+    @Test
+    public void testLookupStopsAtARunOfMissingOrdinals() throws Exception {
+        zone.remove("web-1.ping");
+        zone.put("web-9.ping", Arrays.asList(InetAddress.getByName("10.1.0.9")));
+        resolver = new ParallelOrdinalResolver("web", "ping", 32, 3, 1, dnsResolver);
+        // one missing ordinal is skipped, the pod past five missing ones is not found
+        assertEquals(hosts(0, 2, 3, 4), resolver.getHosts(ALL, null));
+        assertEquals(8, queried.size());
+    }
+
+    @Test
+    public void testLookupStopsAtTheReplicas() throws Exception {
+        resolver = new ParallelOrdinalResolver("web", "ping", 3, 3, 8, dnsResolver);
+        assertEquals(hosts(0, 1, 2), resolver.getHosts(ALL, null));
+        assertEquals(3, queried.size());
+        assertEquals("web-2.ping", resolver.getHostname(2));
+    }
+
+    @Test
+    public void testFamilies() throws Exception {
+        zone.put("web-0.ping", Arrays.asList(InetAddress.getByName("10.1.0.0"), InetAddress.getByName("fd00::")));
+        resolver = new ParallelOrdinalResolver("web", "ping", 2, 3, 2, dnsResolver);
+        assertEquals(Arrays.asList("fd00:0:0:0:0:0:0:0", "10.1.0.0", "10.1.0.1"),
+            Arrays.asList(resolver.getHosts(ALL, AddressFamily.IPV6).toArray()));
+        assertEquals(hosts(0, 1), resolver.getHosts(EnumSet.of(AddressFamily.IPV4), null));
+        // an ordinal without an address of the families is missing
+        assertTrue(resolver.getHosts(EnumSet.of(AddressFamily.IPV6), null).contains("fd00:0:0:0:0:0:0:0"));
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        resolver = new ParallelOrdinalResolver("web", "ping", 32, 3, 4, dnsResolver);
+        failing = true;
+        try {
+            resolver.getHosts(ALL, null);
+            fail("Should have failed");
+        } catch (IOException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,35 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class StatefulSetDnsPingTest {
+
+    @Test
+    public void testStatefulSetName() {
+        assertEquals("web", StatefulSetDnsPing.getStatefulSetName("web-0"));
+        assertEquals("my-web", StatefulSetDnsPing.getStatefulSetName("my-web-12.ping.myproject.svc.cluster.local"));
+        assertNull(StatefulSetDnsPing.getStatefulSetName("web-7d4b9c-x2zq8"));
+        assertNull(StatefulSetDnsPing.getStatefulSetName("web"));
+        assertNull(StatefulSetDnsPing.getStatefulSetName(null));
+    }
+
+}
@@ -21,13 +21,20 @@ import static org.openshift.ping.common.Utils.urlencode;
 
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.jboss.dmr.ModelNode;
+import org.openshift.ping.common.RetryPolicy;
+import org.openshift.ping.common.stream.HttpStatusException;
 import org.openshift.ping.common.stream.StreamProvider;
 
 /**
@@ -36,23 +43,67 @@ import org.openshift.ping.common.stream.StreamProvider;
 public class Client {
     private static final Logger log = Logger.getLogger(Client.class.getName());
 
+    static final String METADATA_ACCEPT = "application/json;as=PartialObjectMetadataList;v=v1;g=meta.k8s.io,application/json;as=PartialObjectMetadataList;v=v1beta1;g=meta.k8s.io,application/json";
+
     private final String masterUrl;
     private final Map<String, String> headers;
+    private final Map<String, String> listHeaders;
     private final int connectTimeout;
     private final int readTimeout;
-    private final int operationAttempts;
-    private final long operationSleep;
+    private final RetryPolicy retryPolicy;
     private final StreamProvider streamProvider;
+    private final PodListReader podListReader;
+    private final HedgedRequests hedgedRequests;
     private final String info;
+    private final ConcurrentMap<String, ListCache> listCaches = new ConcurrentHashMap<String, ListCache>();
 
     public Client(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, int operationAttempts, long operationSleep, StreamProvider streamProvider) {
+        this(masterUrl, headers, connectTimeout, readTimeout, operationAttempts, operationSleep, streamProvider, true);
+    }
+
+    /**
+     * @param streamingParser true to read pod lists with the streaming {@link PodListReader}, false to build a jboss-dmr {@link ModelNode}
+     */
+    public Client(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, int operationAttempts, long operationSleep, StreamProvider streamProvider, boolean streamingParser) {
+        this(masterUrl, headers, connectTimeout, readTimeout, operationAttempts, operationSleep, streamProvider,
+                streamingParser ? new StreamingPodListReader() : new DmrPodListReader());
+    }
+
+    /**
+     * @param podListReader requests and reads the representation of the pod lists
+     */
+    public Client(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, int operationAttempts, long operationSleep, StreamProvider streamProvider, PodListReader podListReader) {
+        this(masterUrl, headers, connectTimeout, readTimeout, new RetryPolicy(operationAttempts, operationSleep), streamProvider, podListReader);
+    }
+
+    /**
+     * @param retryPolicy how each request is retried
+     * @param podListReader requests and reads the representation of the pod lists
+     */
+    public Client(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, RetryPolicy retryPolicy, StreamProvider streamProvider, PodListReader podListReader) {
+        this(masterUrl, headers, connectTimeout, readTimeout, retryPolicy, streamProvider, podListReader, null);
+    }
+
+    /**
+     * @param hedgedRequests hedges the requests, but watches, against alternate endpoints; or null
+     */
+    public Client(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, RetryPolicy retryPolicy, StreamProvider streamProvider, PodListReader podListReader, HedgedRequests hedgedRequests) {
+        String accept = podListReader.getAccept();
+        Map<String, String> listHeaders = headers;
+        if (accept != null) {
+            // only the pod lists are read by the pod list reader; watches and other requests want plain objects
+            listHeaders = headers != null ? new HashMap<String, String>(headers) : new HashMap<String, String>();
+            listHeaders.put("Accept", accept);
+        }
         this.masterUrl = masterUrl;
         this.headers = headers;
+        this.listHeaders = listHeaders;
         this.connectTimeout = connectTimeout;
         this.readTimeout = readTimeout;
-        this.operationAttempts = operationAttempts;
-        this.operationSleep = operationSleep;
+        this.retryPolicy = retryPolicy;
         this.streamProvider = streamProvider;
+        this.podListReader = podListReader;
+        this.hedgedRequests = hedgedRequests;
         Map<String, String> maskedHeaders = new TreeMap<String, String>();
         if (headers != null) {
             for (Map.Entry<String, String> header : headers.entrySet()) {
@@ -64,106 +115,268 @@ public class Client {
                 maskedHeaders.put(key, value);
             }
         }
-        this.info = String.format("%s[masterUrl=%s, headers=%s, connectTimeout=%s, readTimeout=%s, operationAttempts=%s, operationSleep=%s, streamProvider=%s]",
-                getClass().getSimpleName(), masterUrl, maskedHeaders, connectTimeout, readTimeout, operationAttempts, operationSleep, streamProvider);
+        this.info = String.format("%s[masterUrl=%s, headers=%s, connectTimeout=%s, readTimeout=%s, operationAttempts=%s, retryPolicy=[%s], streamProvider=%s, podListReader=%s, hedgedRequests=%s]",
+                getClass().getSimpleName(), masterUrl, maskedHeaders, connectTimeout, readTimeout, retryPolicy.getAttempts(), retryPolicy, streamProvider, podListReader.getClass().getSimpleName(), hedgedRequests);
+    }
+
+    RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @return the hedging of the requests, or null
+     */
+    HedgedRequests getHedgedRequests() {
+        return hedgedRequests;
     }
 
     public final String info() {
         return info;
     }
 
-    protected ModelNode getNode(String op, String namespace, String labels) throws Exception {
-        String url = masterUrl;
+    /**
+     * @param params additional query parameters as name/value pairs; pairs with a null value are omitted
+     */
+    protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+        String url = buildUrl(op, namespace, labels, fields, params);
+        return open(url, headers);
+    }
+
+    /**
+     * Like {@link #getStream}, but asks for the representation of the pod lists read by the {@link PodListReader}.
+     */
+    protected InputStream getListStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+        String url = buildUrl(op, namespace, labels, fields, params);
+        return open(url, listHeaders);
+    }
+
+    /**
+     * Like {@link #getStream}, but lists only the metadata (name, resourceVersion, ...) of each item,
+     * as a PartialObjectMetadataList.
+     */
+    protected InputStream getMetadataStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+        String url = buildUrl(op, namespace, labels, fields, params);
+        Map<String, String> metadataHeaders = headers != null ? new HashMap<String, String>(headers) : new HashMap<String, String>();
+        metadataHeaders.put("Accept", METADATA_ACCEPT);
+        return open(url, metadataHeaders);
+    }
+
+    private InputStream open(String url, final Map<String, String> headers) throws Exception {
+        if (hedgedRequests == null) {
+            return openStream(url, headers, connectTimeout, readTimeout, retryPolicy, streamProvider);
+        }
+        return hedgedRequests.open(masterUrl, url.substring(masterUrl.length()), new HedgedRequests.Opener() {
+            public InputStream open(String url) throws Exception {
+                return openStream(url, headers, connectTimeout, readTimeout, retryPolicy, streamProvider);
+            }
+        });
+    }
+
+    protected ModelNode getNode(String op, String namespace, String labels, String fields, String... params) throws Exception {
+        try (InputStream stream = getStream(op, namespace, labels, fields, params)) {
+            return ModelNode.fromJSONStream(stream);
+        }
+    }
+
+    /**
+     * Opens a watch on the given resource type, starting after the given resourceVersion.
+     * The server closes the stream after timeoutSeconds; the read timeout is extended accordingly.
+     */
+    protected InputStream watch(String op, String namespace, String labels, String fields, String resourceVersion, int timeoutSeconds) throws Exception {
+        String url = buildUrl(op, namespace, labels, fields, "watch", "true", "allowWatchBookmarks", "true",
+                "resourceVersion", resourceVersion, "timeoutSeconds", String.valueOf(timeoutSeconds));
+        int watchReadTimeout = readTimeout + (int) TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        return openStream(url, headers, connectTimeout, watchReadTimeout, retryPolicy, streamProvider);
+    }
+
+    private String buildUrl(String op, String namespace, String labels, String fields, String... params) {
+        StringBuilder url = new StringBuilder(masterUrl);
         if (namespace != null && namespace.length() > 0) {
-            url = url + "/namespaces/" + urlencode(namespace);
+            url.append("/namespaces/").append(urlencode(namespace));
         }
-        url = url + "/" + op;
+        url.append('/').append(op);
+        char sep = '?';
         if (labels != null && labels.length() > 0) {
-            url = url + "?labelSelector=" + urlencode(labels);
+            url.append(sep).append("labelSelector=").append(urlencode(labels));
+            sep = '&';
         }
-        try (InputStream stream = openStream(url, headers, connectTimeout, readTimeout, operationAttempts, operationSleep, streamProvider)) {
-            return ModelNode.fromJSONStream(stream);
+        if (fields != null && fields.length() > 0) {
+            url.append(sep).append("fieldSelector=").append(urlencode(fields));
+            sep = '&';
         }
+        for (int i = 0; i + 1 < params.length; i += 2) {
+            if (params[i + 1] != null) {
+                url.append(sep).append(params[i]).append('=').append(urlencode(params[i + 1]));
+                sep = '&';
+            }
+        }
+        return url.toString();
     }
 
     public final List<Pod> getPods(String namespace, String labels) throws Exception {
-        ModelNode root = getNode("pods", namespace, labels);
+        return getPods(namespace, labels, null);
+    }
+
+    /**
+     * @param fields a field selector (i.e. status.phase=Running) to filter the pods on the server side;
+     *               pods which are not Running are always filtered out on the client side as well
+     */
+    public final List<Pod> getPods(String namespace, String labels, String fields) throws Exception {
+        return getPods(namespace, labels, fields, 0);
+    }
+
+    /**
+     * Lists the pods in chunks of at most pageSize, following the continue token of each page.
+     * Each page is converted to pods and released before the next one is requested.
+     * <p/>
+     * The previous list of each namespace, labels and fields is remembered: it is requested again with resourceVersionMatch=NotOlderThan its
+     * resourceVersion, so the server can answer from its cache, and pages whose items did not change
+     * are not parsed again (see {@link ListCache}). If the server answers that request with 410 Gone or
+     * 400 Bad Request, the pods are listed once more without a resourceVersion.
+     *
+     * @param pageSize the maximum number of pods per request; 0 or less lists all pods in a single request
+     */
+    public final List<Pod> getPods(String namespace, String labels, String fields, int pageSize) throws Exception {
+        String limit = pageSize > 0 ? String.valueOf(pageSize) : null;
+        String key = Arrays.asList(namespace, labels, fields, limit).toString();
+        ListCache previous = listCaches.get(key);
+        ListCache next = new ListCache(key);
         List<Pod> pods = new ArrayList<Pod>();
-        List<ModelNode> itemNodes = root.get("items").asList();
-        for (ModelNode itemNode : itemNodes) {
-            //ModelNode metadataNode = itemNode.get("metadata");
-            //String podName = metadataNode.get("name").asString(); // eap-app-1-43wra
-            //String podNamespace = metadataNode.get("namespace").asString(); // dward
-            ModelNode specNode = itemNode.get("spec");
-            //String serviceAccount = specNode.get("serviceAccount").asString(); // default
-            //String host = specNode.get("host").asString(); // ce-openshift-rhel-minion-1.lab.eng.brq.redhat.com
-            ModelNode statusNode = itemNode.get("status");
-            ModelNode phaseNode = statusNode.get("phase");
-            if (!phaseNode.isDefined() || !"Running".equals(phaseNode.asString())) {
-                continue;
-            }
-            /* We don't want to filter on the following as that could result in MERGEs instead of JOINs.
-            ModelNode conditionsNode = statusNode.get("conditions");
-            if (!conditionsNode.isDefined()) {
-                continue;
-            }
-            boolean ready = false;
-            List<ModelNode> conditions = conditionsNode.asList();
-            for (ModelNode condition : conditions) {
-                ModelNode conditionTypeNode = condition.get("type");
-                ModelNode conditionStatusNode = condition.get("status");
-                if (conditionTypeNode.isDefined() && "Ready".equals(conditionTypeNode.asString()) &&
-                        conditionStatusNode.isDefined() && "True".equals(conditionStatusNode.asString())) {
-                    ready = true;
-                    break;
+        String cont = null;
+        try {
+            boolean more;
+            do {
+                String resourceVersion = cont == null && previous != null ? previous.getResourceVersion() : null;
+                String[] params = concat(podListReader.getParams(), "limit", limit, "continue", cont,
+                        "resourceVersion", resourceVersion, "resourceVersionMatch", resourceVersion != null ? "NotOlderThan" : null);
+                try (InputStream stream = getListStream("pods", namespace, labels, fields, params)) {
+                    cont = next.readPage(stream, previous, podListReader, pods);
+                    more = cont != null;
+                } catch (Exception e) {
+                    int status = HttpStatusException.getStatus(e);
+                    if (resourceVersion == null || (status != 410 && status != 400)) {
+                        throw e;
+                    }
+                    // 410 Gone: servers before 1.19 ignore resourceVersionMatch and, with a limit, want exactly the
+                    // remembered, possibly compacted, resourceVersion; 400: the server rejects resourceVersionMatch.
+                    // Either way list once more without it
+                    if (log.isLoggable(Level.FINE)) {
+                        log.log(Level.FINE, String.format("Could not list the pods not older than resourceVersion %s; listing them anew: %s",
+                                resourceVersion, e));
+                    }
+                    previous = null;
+                    next = new ListCache(key);
+                    pods.clear();
+                    cont = null;
+                    more = true;
                 }
+            } while (more);
+        } catch (Exception e) {
+            // i.e. the server could not catch up with the remembered resourceVersion; start over
+            listCaches.remove(key);
+            throw e;
+        }
+        listCaches.put(key, next);
+        if (log.isLoggable(Level.FINE)) {
+            log.log(Level.FINE, String.format("getPods(%s, %s, %s, %s) = %s; %s unchanged page(s) reused",
+                    namespace, labels, fields, pageSize, pods, next.getReused()));
+        }
+        return pods;
+    }
+
+    /**
+     * @return the continue token of a list, or null if this was the last page
+     */
+    static String getContinue(ModelNode listNode) {
+        ModelNode continueNode = listNode.get("metadata", "continue");
+        if (continueNode.isDefined()) {
+            String cont = continueNode.asString();
+            if (cont.length() > 0) {
+                return cont;
             }
-            if (!ready) {
-                continue;
-            }
-            */
-            //String hostIP = statusNode.get("hostIP").asString(); // 10.34.75.250
-            ModelNode podIPNode = statusNode.get("podIP");
-            if (!podIPNode.isDefined()) {
-                continue;
+        }
+        return null;
+    }
+
+    /**
+     * Converts a single pod item, or returns null if the pod is not a discovery candidate.
+     */
+    static Pod toPod(ModelNode itemNode) {
+        //ModelNode metadataNode = itemNode.get("metadata");
+        //String podName = metadataNode.get("name").asString(); // eap-app-1-43wra
+        //String podNamespace = metadataNode.get("namespace").asString(); // dward
+        ModelNode specNode = itemNode.get("spec");
+        //String serviceAccount = specNode.get("serviceAccount").asString(); // default
+        //String host = specNode.get("host").asString(); // ce-openshift-rhel-minion-1.lab.eng.brq.redhat.com
+        ModelNode statusNode = itemNode.get("status");
+        ModelNode phaseNode = statusNode.get("phase");
+        if (!phaseNode.isDefined() || !"Running".equals(phaseNode.asString())) {
+            return null;
+        }
+        /* We don't want to filter on the following as that could result in MERGEs instead of JOINs.
+        ModelNode conditionsNode = statusNode.get("conditions");
+        if (!conditionsNode.isDefined()) {
+            return null;
+        }
+        boolean ready = false;
+        List<ModelNode> conditions = conditionsNode.asList();
+        for (ModelNode condition : conditions) {
+            ModelNode conditionTypeNode = condition.get("type");
+            ModelNode conditionStatusNode = condition.get("status");
+            if (conditionTypeNode.isDefined() && "Ready".equals(conditionTypeNode.asString()) &&
+                    conditionStatusNode.isDefined() && "True".equals(conditionStatusNode.asString())) {
+                ready = true;
+                break;
             }
-            String podIP = podIPNode.asString(); // 10.1.0.169
-            Pod pod = new Pod(podIP);
-            ModelNode containersNode = specNode.get("containers");
-            if (!containersNode.isDefined()) {
+        }
+        if (!ready) {
+            return null;
+        }
+        */
+        //String hostIP = statusNode.get("hostIP").asString(); // 10.34.75.250
+        ModelNode podIPNode = statusNode.get("podIP");
+        if (!podIPNode.isDefined()) {
+            return null;
+        }
+        String podIP = podIPNode.asString(); // 10.1.0.169
+        Pod pod = new Pod(podIP);
+        ModelNode containersNode = specNode.get("containers");
+        if (!containersNode.isDefined()) {
+            return null;
+        }
+        List<ModelNode> containerNodes = containersNode.asList();
+        for (ModelNode containerNode : containerNodes) {
+            ModelNode portsNode = containerNode.get("ports");
+            if (!portsNode.isDefined()) {
                 continue;
             }
-            List<ModelNode> containerNodes = containersNode.asList();
-            for (ModelNode containerNode : containerNodes) {
-                ModelNode portsNode = containerNode.get("ports");
-                if (!portsNode.isDefined()) {
+            //String containerName = containerNode.get("name").asString(); // eap-app
+            Container container = new Container();
+            List<ModelNode> portNodes = portsNode.asList();
+            for (ModelNode portNode : portNodes) {
+                ModelNode portNameNode = portNode.get("name");
+                if (!portNameNode.isDefined()) {
                     continue;
                 }
-                //String containerName = containerNode.get("name").asString(); // eap-app
-                Container container = new Container();
-                List<ModelNode> portNodes = portsNode.asList();
-                for (ModelNode portNode : portNodes) {
-                    ModelNode portNameNode = portNode.get("name");
-                    if (!portNameNode.isDefined()) {
-                        continue;
-                    }
-                    String portName = portNameNode.asString(); // ping
-                    ModelNode containerPortNode = portNode.get("containerPort");
-                    if (!containerPortNode.isDefined()) {
-                        continue;
-                    }
-                    int containerPort = containerPortNode.asInt(); // 8888
-                    Port port = new Port(portName, containerPort);
-                    container.addPort(port);
+                String portName = portNameNode.asString(); // ping
+                ModelNode containerPortNode = portNode.get("containerPort");
+                if (!containerPortNode.isDefined()) {
+                    continue;
                 }
-                pod.addContainer(container);
+                int containerPort = containerPortNode.asInt(); // 8888
+                Port port = new Port(portName, containerPort);
+                container.addPort(port);
             }
-            pods.add(pod);
-        }
-        if (log.isLoggable(Level.FINE)) {
-            log.log(Level.FINE, String.format("getPods(%s, %s) = %s", namespace, labels, pods));
+            pod.addContainer(container);
         }
-        return pods;
+        return pod;
+    }
+
+    private static String[] concat(String[] params, String... more) {
+        String[] all = new String[params.length + more.length];
+        System.arraycopy(params, 0, all, 0, params.length);
+        System.arraycopy(more, 0, all, params.length, more.length);
+        return all;
     }
 
     public boolean accept(Context context) {
@@ -0,0 +1,54 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Reads a PodList by building the complete jboss-dmr {@link ModelNode} tree.
+ */
+final class DmrPodListReader implements PodListReader {
+    private static final String[] PARAMS = new String[0];
+
+    @Override
+    public String getAccept() {
+        return null;
+    }
+
+    @Override
+    public String[] getParams() {
+        return PARAMS;
+    }
+
+    @Override
+    public String read(InputStream stream, List<Pod> pods) throws IOException {
+        ModelNode root = ModelNode.fromJSONStream(stream);
+        List<ModelNode> itemNodes = root.get("items").asList();
+        for (ModelNode itemNode : itemNodes) {
+            Pod pod = Client.toPod(itemNode);
+            if (pod != null) {
+                pods.add(pod);
+            }
+        }
+        return Client.getContinue(root);
+    }
+
+}
@@ -0,0 +1,122 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import static org.openshift.ping.common.Utils.urlencode;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.dmr.ModelNode;
+import org.openshift.ping.common.EndpointSlices;
+
+/**
+ * Discovers the endpoints of a service from its discovery.k8s.io/v1 EndpointSlices.
+ * <p/>
+ * Each endpoint address is reported as a pod with a single container exposing the ports of its slice,
+ * so the service port has to be named like the ping port.
+ *
+ * @see EndpointSlices
+ */
+public class EndpointSliceCache extends EndpointSlices<Pod> {
+    private static final String OP = "endpointslices";
+
+    private final Client client;
+    private final String namespace;
+    private final String labels;
+
+    /**
+     * @param client a client for the discovery.k8s.io/v1 API (i.e. https://host:port/apis/discovery.k8s.io/v1)
+     * @param namespace the namespace of the service
+     * @param serviceName the name of the service
+     */
+    public EndpointSliceCache(Client client, String namespace, String serviceName) {
+        this.client = client;
+        this.namespace = namespace;
+        this.labels = "kubernetes.io/service-name=" + serviceName;
+    }
+
+    public List<Pod> getPods() throws Exception {
+        return getEndpoints();
+    }
+
+    @Override
+    protected ModelNode listSlices() throws Exception {
+        return client.getNode(OP, namespace, labels, null);
+    }
+
+    @Override
+    protected ModelNode listSliceMetadata() throws Exception {
+        try (InputStream stream = client.getMetadataStream(OP, namespace, labels, null)) {
+            return ModelNode.fromJSONStream(stream);
+        }
+    }
+
+    @Override
+    protected ModelNode getSlice(String name) throws Exception {
+        return client.getNode(OP + "/" + urlencode(name), namespace, null, null);
+    }
+
+    @Override
+    protected List<Pod> toEndpoints(ModelNode sliceNode) {
+        return toPods(sliceNode);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("namespace [%s], labels [%s]", namespace, labels);
+    }
+
+    static List<Pod> toPods(ModelNode sliceNode) {
+        List<Pod> pods = new ArrayList<Pod>();
+        String addressType = sliceNode.get("addressType").asString();
+        if (!"IPv4".equals(addressType) && !"IPv6".equals(addressType)) {
+            // FQDN
+            return pods;
+        }
+        List<Port> ports = new ArrayList<Port>();
+        if (sliceNode.hasDefined("ports")) {
+            for (ModelNode portNode : sliceNode.get("ports").asList()) {
+                if (portNode.hasDefined("name") && portNode.hasDefined("port")) {
+                    ports.add(new Port(portNode.get("name").asString(), portNode.get("port").asInt()));
+                }
+            }
+        }
+        if (!sliceNode.hasDefined("endpoints")) {
+            return pods;
+        }
+        for (ModelNode endpointNode : sliceNode.get("endpoints").asList()) {
+            // like pods, not ready endpoints are discovered as well, as that could otherwise result in MERGEs instead of JOINs
+            ModelNode terminatingNode = endpointNode.get("conditions", "terminating");
+            if ((terminatingNode.isDefined() && terminatingNode.asBoolean()) || !endpointNode.hasDefined("addresses")) {
+                continue;
+            }
+            for (ModelNode addressNode : endpointNode.get("addresses").asList()) {
+                Container container = new Container();
+                for (Port port : ports) {
+                    container.addPort(port);
+                }
+                Pod pod = new Pod(addressNode.asString());
+                pod.addContainer(container);
+                pods.add(pod);
+            }
+        }
+        return pods;
+    }
+
+}
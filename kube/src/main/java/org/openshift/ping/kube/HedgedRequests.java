@@ -0,0 +1,214 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hedges the requests of a {@link Client} against alternate API server endpoints.
+ * <p/>
+ * A request is sent to the master URL of the client first. If it has not been answered after the
+ * given percentile of the recent response times, a second request is sent to the next alternate
+ * master URL, and whichever response arrives first is used; the other one is cancelled or closed.
+ * Until enough response times are known, the minimum delay is used.
+ */
+public class HedgedRequests {
+    private static final Logger log = Logger.getLogger(HedgedRequests.class.getName());
+
+    private static final int SAMPLES = 128;
+    private static final int MIN_SAMPLES = 10;
+
+    private final List<String> alternateUrls;
+    private final int percentile;
+    private final long minDelay;
+    private final ExecutorService executor;
+    private final AtomicInteger nextAlternate = new AtomicInteger();
+
+    private final long[] latencies = new long[SAMPLES];
+    private int latencyCount;
+    private int nextLatency;
+
+    private final AtomicInteger hedged = new AtomicInteger();
+    private final AtomicInteger hedgeWins = new AtomicInteger();
+
+    /**
+     * Opens a stream from an absolute URL.
+     */
+    public interface Opener {
+        InputStream open(String url) throws Exception;
+    }
+
+    /**
+     * @param alternateUrls the alternate master URLs, each like the master URL of the client
+     * @param percentile the percentile of the recent response times after which a request is hedged
+     * @param minDelay the minimum delay before a request is hedged, in milliseconds
+     */
+    public HedgedRequests(List<String> alternateUrls, int percentile, long minDelay) {
+        this.alternateUrls = alternateUrls;
+        this.percentile = Math.max(1, Math.min(percentile, 100));
+        this.minDelay = minDelay;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "HedgedRequests-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @param masterUrl the master URL of the client
+     * @param path the part of the URL after the master URL
+     */
+    public InputStream open(String masterUrl, String path, Opener opener) throws Exception {
+        if (alternateUrls.isEmpty()) {
+            return opener.open(masterUrl + path);
+        }
+        AtomicBoolean claimed = new AtomicBoolean();
+        ExecutorCompletionService<InputStream> completion = new ExecutorCompletionService<InputStream>(executor);
+        long delay = getDelay();
+        Future<InputStream> primary = completion.submit(new Leg(masterUrl + path, opener, claimed));
+        Future<InputStream> done = completion.poll(delay, TimeUnit.MILLISECONDS);
+        Future<InputStream> hedge = null;
+        if (done == null || failed(done)) {
+            String alternateUrl = alternateUrls.get((nextAlternate.getAndIncrement() & Integer.MAX_VALUE) % alternateUrls.size());
+            hedged.incrementAndGet();
+            if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("No response from [%s] within %sms; hedging with [%s]", masterUrl, delay, alternateUrl));
+            }
+            hedge = completion.submit(new Leg(alternateUrl + path, opener, claimed));
+            if (done == null) {
+                done = completion.take();
+            }
+        }
+        try {
+            InputStream stream;
+            try {
+                stream = done.get();
+            } catch (ExecutionException ee) {
+                if (hedge == null) {
+                    throw ee;
+                }
+                // the other leg is still pending
+                done = completion.take();
+                stream = done.get();
+            }
+            if (done == hedge) {
+                hedgeWins.incrementAndGet();
+            }
+            return stream;
+        } catch (ExecutionException ee) {
+            throw ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private static boolean failed(Future<InputStream> future) throws InterruptedException {
+        try {
+            future.get();
+            return false;
+        } catch (ExecutionException ee) {
+            return true;
+        }
+    }
+
+    long getDelay() {
+        synchronized (latencies) {
+            if (latencyCount < MIN_SAMPLES) {
+                return minDelay;
+            }
+            long[] sorted = Arrays.copyOf(latencies, latencyCount);
+            Arrays.sort(sorted);
+            int index = Math.min(latencyCount - 1, (int) Math.ceil(latencyCount * percentile / 100.0) - 1);
+            return Math.max(minDelay, sorted[index]);
+        }
+    }
+
+    private void record(long latency) {
+        synchronized (latencies) {
+            latencies[nextLatency] = latency;
+            nextLatency = (nextLatency + 1) % SAMPLES;
+            latencyCount = Math.min(latencyCount + 1, SAMPLES);
+        }
+    }
+
+    /**
+     * @return the number of requests which were hedged
+     */
+    public int getHedged() {
+        return hedged.get();
+    }
+
+    /**
+     * @return the number of hedged requests answered first by the alternate endpoint
+     */
+    public int getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public String toString() {
+        return String.format("%s[alternateUrls=%s, percentile=%s, minDelay=%s]", getClass().getSimpleName(), alternateUrls, percentile, minDelay);
+    }
+
+    private final class Leg implements Callable<InputStream> {
+        private final String url;
+        private final Opener opener;
+        private final AtomicBoolean claimed;
+
+        private Leg(String url, Opener opener, AtomicBoolean claimed) {
+            this.url = url;
+            this.opener = opener;
+            this.claimed = claimed;
+        }
+
+        public InputStream call() throws Exception {
+            long start = System.nanoTime();
+            InputStream stream = opener.open(url);
+            record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            if (!claimed.compareAndSet(false, true)) {
+                // the other leg was faster
+                stream.close();
+                throw new IOException("Superseded by a faster response");
+            }
+            return stream;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Minimal pull-based JSON reader.
+ * <p/>
+ * Values the caller is not interested in are skipped without being built.
+ * Separators are handled leniently; this is only meant to read well-formed API server responses.
+ */
+final class JsonReader {
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int pos;
+    private int limit;
+
+    JsonReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    /**
+     * @return true if the current object or array has another member
+     */
+    boolean hasNext() throws IOException {
+        char c = peek();
+        if (c == ',') {
+            pos++;
+            c = peek();
+        }
+        return c != '}' && c != ']';
+    }
+
+    String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    /**
+     * @return true (and consumes it) if the next value is null
+     */
+    boolean nextNull() throws IOException {
+        if (peek() == 'n') {
+            skipLiteral();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the next string, or the text of the next number or boolean, or null
+     */
+    String nextString() throws IOException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            return readString();
+        }
+        if (c == 'n') {
+            skipLiteral();
+            return null;
+        }
+        return readLiteral();
+    }
+
+    /**
+     * @return like {@link #nextString()}, but skips objects and arrays and returns null for them
+     */
+    String nextScalar() throws IOException {
+        char c = peek();
+        if (c == '{' || c == '[') {
+            skipValue();
+            return null;
+        }
+        return nextString();
+    }
+
+    void skipValue() throws IOException {
+        char c = peek();
+        if (c == '"') {
+            pos++;
+            skipString();
+        } else if (c == '{' || c == '[') {
+            pos++;
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        } else {
+            skipLiteral();
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        char c = peek();
+        if (c != expected) {
+            throw new IOException(String.format("Expected '%s' but was '%s'", expected, c));
+        }
+        pos++;
+    }
+
+    private char peek() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw new EOFException("Unexpected end of JSON input");
+            }
+            char c = buffer[pos];
+            if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                pos++;
+            } else {
+                return c;
+            }
+        }
+    }
+
+    private char read() throws IOException {
+        if (pos == limit && !fill()) {
+            throw new EOFException("Unexpected end of JSON input");
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = reader.read(buffer, 0, buffer.length);
+        pos = 0;
+        limit = n > 0 ? n : 0;
+        return n > 0;
+    }
+
+    private String readString() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            char c = read();
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c == '\\') {
+                c = read();
+                switch (c) {
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u':
+                        char[] hex = new char[4];
+                        for (int i = 0; i < hex.length; i++) {
+                            hex[i] = read();
+                        }
+                        sb.append((char) Integer.parseInt(new String(hex), 16));
+                        break;
+                    default: sb.append(c);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            char c = read();
+            if (c == '"') {
+                return;
+            }
+            if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    private String readLiteral() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (pos < limit || fill()) {
+            char c = buffer[pos];
+            if (isLiteralEnd(c)) {
+                break;
+            }
+            sb.append(c);
+            pos++;
+        }
+        return sb.toString();
+    }
+
+    private void skipLiteral() throws IOException {
+        while (pos < limit || fill()) {
+            if (isLiteralEnd(buffer[pos])) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private static boolean isLiteralEnd(char c) {
+        return c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+}
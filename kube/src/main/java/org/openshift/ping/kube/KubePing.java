@@ -17,20 +17,27 @@
 package org.openshift.ping.kube;
 
 import static org.openshift.ping.common.Utils.getSystemEnv;
+import static org.openshift.ping.common.Utils.getSystemEnvBoolean;
 import static org.openshift.ping.common.Utils.getSystemEnvInt;
 import static org.openshift.ping.common.Utils.readFileToString;
 
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.jgroups.annotations.MBean;
+import org.jgroups.annotations.ManagedAttribute;
 import org.jgroups.annotations.Property;
 import org.jgroups.conf.ClassConfigurator;
+import org.openshift.ping.common.CircuitBreaker;
 import org.openshift.ping.common.OpenshiftPing;
+import org.openshift.ping.common.RetryPolicy;
+import org.openshift.ping.common.stream.BaseStreamProvider;
 import org.openshift.ping.common.stream.CertificateStreamProvider;
 import org.openshift.ping.common.stream.StreamProvider;
 import org.openshift.ping.common.stream.TokenStreamProvider;
@@ -59,6 +66,15 @@ public class KubePing extends OpenshiftPing {
     @Property
     private String apiVersion = "v1";
 
+    @Property
+    private String alternateMasters;
+
+    @Property
+    private int hedgePercentile = 95;
+
+    @Property
+    private long hedgeMinDelay = 100;
+
     @Property
     private String namespace; // DO NOT HARDCODE A DEFAULT (i.e.: "default") - SEE isClusteringEnabled() and init() METHODS BELOW!
     private String _namespace;
@@ -67,6 +83,20 @@ public class KubePing extends OpenshiftPing {
     private String labels;
     private String _labels;
 
+    @Property
+    private String sources;
+
+    @Property
+    private int sourceThreads = 4;
+
+    @Property
+    private String fields = "status.phase=Running";
+    private String _fields;
+
+    @Property
+    private int pageSize = 500;
+    private int _pageSize;
+
     @Property
     private int serverPort = 8888;
     private int _serverPort;
@@ -93,8 +123,42 @@ public class KubePing extends OpenshiftPing {
     @Property
     private String saTokenFile = "/var/run/secrets/kubernetes.io/serviceaccount/token";
 
+    @Property
+    private int maxConnections = 0;
+
+    @Property
+    private int keepAliveTimeout = 0;
+
+    @Property
+    private boolean streamingParser = true;
+
+    @Property
+    private boolean compression = true;
+
+    @Property
+    private String fetchMode = "object";
+
+    @Property
+    private String serviceName;
+
+    @Property
+    private boolean watchPods = false;
+
+    @Property
+    private int watchTimeout = 300;
+
     private Client _client;
 
+    @Property
+    private boolean shareFetcher = false;
+
+    @Property
+    private long sharedSnapshotTtl = 1000;
+
+    private volatile PodFetcher _fetcher;
+
+    private String _fetcherKey;
+
     private boolean _hasLoggedPermissionError = false;
 
     public KubePing() {
@@ -127,13 +191,30 @@ public class KubePing extends OpenshiftPing {
         return _serverPort;
     }
 
+    /**
+     * @return the client of the pod fetcher, as made by {@link #createClient}
+     */
     protected Client getClient() {
         return _client;
     }
 
+    /**
+     * Makes the client the pods are fetched with. Called once per fetcher; only its arguments may go into
+     * the client, as a shared fetcher outlives this protocol.
+     */
+    protected Client createClient(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, RetryPolicy retryPolicy,
+            StreamProvider streamProvider, PodListReader podListReader, HedgedRequests hedgedRequests) {
+        return new Client(masterUrl, headers, connectTimeout, readTimeout, retryPolicy, streamProvider, podListReader, hedgedRequests);
+    }
+
     public void init() throws Exception {
         super.init();
         _namespace = getSystemEnv(getSystemEnvName("NAMESPACE"), namespace, true);
+        String srcs = getSystemEnv(getSystemEnvName("SOURCES"), sources, true);
+        if (_namespace == null && srcs != null) {
+            List<PodSource> parsed = PodSource.parse(srcs, null);
+            _namespace = parsed.isEmpty() ? null : parsed.get(0).getNamespace();
+        }
         if (_namespace == null) {
             if (log.isInfoEnabled()) {
                 log.info(String.format("namespace not set; clustering disabled"));
@@ -144,11 +225,14 @@ public class KubePing extends OpenshiftPing {
         if (log.isInfoEnabled()) {
             log.info(String.format("namespace [%s] set; clustering enabled", _namespace));
         }
+        BaseStreamProvider.configureKeepAlive(getSystemEnvInt(getSystemEnvName("MAX_CONNECTIONS"), maxConnections),
+                getSystemEnvInt(getSystemEnvName("KEEP_ALIVE_TIMEOUT"), keepAliveTimeout));
         String mProtocol = getSystemEnv(getSystemEnvName("MASTER_PROTOCOL"), masterProtocol, true);
         String mHost;
         int mPort;
-        Map<String, String> headers = new HashMap<String, String>();
+        final Map<String, String> headers = new HashMap<String, String>();
         StreamProvider streamProvider;
+        String credentials;
         String cCertFile = getSystemEnv(new String[]{getSystemEnvName("CLIENT_CERT_FILE"), "KUBERNETES_CLIENT_CERTIFICATE_FILE"}, clientCertFile, true);
         if (cCertFile != null) {
             if (mProtocol == null) {
@@ -161,51 +245,190 @@ public class KubePing extends OpenshiftPing {
             String cKeyAlgo = getSystemEnv(new String[]{getSystemEnvName("CLIENT_KEY_ALGO"), "KUBERNETES_CLIENT_KEY_ALGO"}, clientKeyAlgo, true);
             String lCaCertFile = getSystemEnv(new String[]{getSystemEnvName("CA_CERT_FILE"), "KUBERNETES_CA_CERTIFICATE_FILE"}, caCertFile, true);
             streamProvider = new CertificateStreamProvider(cCertFile, cKeyFile, cKeyPassword, cKeyAlgo, lCaCertFile);
+            credentials = Arrays.asList(cCertFile, cKeyFile, cKeyAlgo, lCaCertFile).toString();
         } else {
             if (mProtocol == null) {
                 mProtocol = "https";
             }
             mHost = getSystemEnv(new String[]{getSystemEnvName("MASTER_HOST"), "KUBERNETES_SERVICE_HOST"}, masterHost, true);
             mPort = getSystemEnvInt(new String[]{getSystemEnvName("MASTER_PORT"), "KUBERNETES_SERVICE_PORT"}, masterPort);
-            String saToken = readFileToString(getSystemEnv(getSystemEnvName("SA_TOKEN_FILE"), saTokenFile, true));
+            String lSaTokenFile = getSystemEnv(getSystemEnvName("SA_TOKEN_FILE"), saTokenFile, true);
+            String saToken = readFileToString(lSaTokenFile);
             String lCaCertFile = getSystemEnv(new String[]{getSystemEnvName("CA_CERT_FILE"), "KUBERNETES_CA_CERTIFICATE_FILE"}, caCertFile, true);
 
             streamProvider = new TokenStreamProvider(saToken, lCaCertFile);
+            credentials = Arrays.asList(lSaTokenFile, lCaCertFile).toString();
+        }
+        final boolean compress = getSystemEnvBoolean(getSystemEnvName("COMPRESSION"), compression);
+        if (streamProvider instanceof BaseStreamProvider) {
+            ((BaseStreamProvider) streamProvider).setCompression(compress);
         }
-        String ver = getSystemEnv(getSystemEnvName("API_VERSION"), apiVersion, true);
-        String url = String.format("%s://%s:%s/api/%s", mProtocol, mHost, mPort, ver);
+        final String ver = getSystemEnv(getSystemEnvName("API_VERSION"), apiVersion, true);
+        final String url = String.format("%s://%s:%s/api/%s", mProtocol, mHost, mPort, ver);
         _labels = getSystemEnv(getSystemEnvName("LABELS"), labels, true);
+        _fields = getSystemEnv(getSystemEnvName("FIELDS"), fields, true);
+        _pageSize = getSystemEnvInt(getSystemEnvName("PAGE_SIZE"), pageSize);
         _pingPortName = getSystemEnv(getSystemEnvName("PORT_NAME"), pingPortName, true);
         _serverPort = getSystemEnvInt(getSystemEnvName("SERVER_PORT"), serverPort);
-        _client = new Client(url, headers, getConnectTimeout(), getReadTimeout(), getOperationAttempts(), getOperationSleep(), streamProvider);
+        final String fMode = getSystemEnv(getSystemEnvName("FETCH_MODE"), fetchMode, true);
+        PodListReader podListReader;
+        if ("table".equalsIgnoreCase(fMode)) {
+            podListReader = new TablePodListReader(_pingPortName, _serverPort);
+        } else if (getSystemEnvBoolean(getSystemEnvName("STREAMING_PARSER"), streamingParser)) {
+            podListReader = new StreamingPodListReader();
+        } else {
+            podListReader = new DmrPodListReader();
+        }
+        final String[] alternates = getAlternateMasters();
+        final List<PodSource> podSources = srcs != null ? PodSource.parse(srcs, _labels) : new ArrayList<PodSource>();
+        final boolean wPods = getSystemEnvBoolean(getSystemEnvName("WATCH_PODS"), watchPods);
+        final String sName = getSystemEnv(getSystemEnvName("SERVICE_NAME"), serviceName, true);
+        if (podSources.size() > 1) {
+            if ("endpointslices".equalsIgnoreCase(fMode) || wPods) {
+                throw new IllegalArgumentException("sources cannot be combined with fetchMode endpointslices or watchPods");
+            }
+        } else if (podSources.size() == 1) {
+            _namespace = podSources.get(0).getNamespace();
+            _labels = podSources.get(0).getLabels();
+        }
+        if ("endpointslices".equalsIgnoreCase(fMode) && sName == null) {
+            throw new IllegalArgumentException("serviceName is required with fetchMode endpointslices");
+        }
+        final boolean share = getSystemEnvBoolean(getSystemEnvName("SHARE_FETCHER"), shareFetcher);
+        // the factory builds the fetcher off these settings only, as a shared fetcher outlives the protocol creating it
+        final String slicesUrl = String.format("%s://%s:%s/apis/discovery.k8s.io/v1", mProtocol, mHost, mPort);
+        final StreamProvider sProvider = streamProvider;
+        final PodListReader reader = podListReader;
+        final String ns = _namespace;
+        final String lbls = _labels;
+        final String flds = _fields;
+        final int pSize = _pageSize;
+        final int cTimeout = getConnectTimeout();
+        final int rTimeout = getReadTimeout();
+        final RetryPolicy retryPolicy = share ? getRetryPolicy().copy() : getRetryPolicy();
+        final long oSleep = getOperationSleep();
+        final int hPercentile = getSystemEnvInt(getSystemEnvName("HEDGE_PERCENTILE"), hedgePercentile);
+        final long hMinDelay = (long) getSystemEnvInt(getSystemEnvName("HEDGE_MIN_DELAY"), (int) hedgeMinDelay);
+        final long ttl = share ? (long) getSystemEnvInt(getSystemEnvName("SHARED_SNAPSHOT_TTL"), (int) sharedSnapshotTtl) : 0;
+        final int sThreads = getSystemEnvInt(getSystemEnvName("SOURCE_THREADS"), sourceThreads);
+        final int wTimeout = getSystemEnvInt(getSystemEnvName("WATCH_TIMEOUT"), watchTimeout);
+        PodFetcher.Factory factory = new PodFetcher.Factory() {
+            public PodFetcher create() throws Exception {
+                Client client = createClient(url, headers, cTimeout, rTimeout, retryPolicy, sProvider, reader,
+                        newHedgedRequests(alternates, "/api/" + ver, hPercentile, hMinDelay));
+                PodFetcher fetcher = new PodFetcher(client, ns, lbls, flds, pSize, ttl);
+                fetcher.addHedgedRequests(client.getHedgedRequests());
+                if (podSources.size() > 1) {
+                    fetcher.setLister(new ParallelPodLister(client, podSources, flds, pSize, sThreads));
+                    if (log.isInfoEnabled()) {
+                        log.info(String.format("sources %s set; listing pods of each concurrently", podSources));
+                    }
+                }
+                if ("endpointslices".equalsIgnoreCase(fMode)) {
+                    Client slicesClient = new Client(slicesUrl, headers, cTimeout, rTimeout, retryPolicy, sProvider, new StreamingPodListReader(),
+                            newHedgedRequests(alternates, "/apis/discovery.k8s.io/v1", hPercentile, hMinDelay));
+                    fetcher.addHedgedRequests(slicesClient.getHedgedRequests());
+                    fetcher.setEndpointSlices(new EndpointSliceCache(slicesClient, ns, sName));
+                } else if (wPods) {
+                    fetcher.setInformer(new PodInformer(client, ns, lbls, flds, pSize, wTimeout, oSleep));
+                }
+                return fetcher;
+            }
+        };
+        if (share) {
+            CircuitBreaker circuitBreaker = retryPolicy.getCircuitBreaker();
+            _fetcherKey = Arrays.asList(url, credentials, compress, ns, lbls, flds, pSize, _pingPortName, _serverPort, fMode,
+                    reader.getClass().getName(), srcs, sThreads, sName, wPods, wTimeout, oSleep, cTimeout, rTimeout,
+                    retryPolicy.getAttempts(), retryPolicy, circuitBreaker != null ? circuitBreaker.getSettings() : null,
+                    Arrays.asList(alternates), hPercentile, hMinDelay, ttl).toString();
+            _fetcher = PodFetcher.acquire(_fetcherKey, factory);
+        } else {
+            _fetcher = factory.create();
+        }
+        _client = _fetcher.getClient();
+    }
+
+    /**
+     * @return the alternate API server endpoints (i.e. https://10.0.0.1:6443), besides the master host and port
+     */
+    private String[] getAlternateMasters() {
+        String masters = getSystemEnv(getSystemEnvName("ALTERNATE_MASTERS"), alternateMasters, true);
+        List<String> list = new ArrayList<String>();
+        if (masters != null) {
+            for (String master : masters.split(",")) {
+                master = master.trim();
+                if (master.length() > 0) {
+                    list.add(master.endsWith("/") ? master.substring(0, master.length() - 1) : master);
+                }
+            }
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    private static HedgedRequests newHedgedRequests(String[] alternates, String path, int percentile, long minDelay) {
+        if (alternates.length == 0) {
+            return null;
+        }
+        List<String> alternateUrls = new ArrayList<String>();
+        for (String alternate : alternates) {
+            alternateUrls.add(alternate + path);
+        }
+        return new HedgedRequests(alternateUrls, percentile, minDelay);
     }
 
     @Override
     public void destroy() {
         _namespace = null;
         _labels = null;
+        _fields = null;
+        _pageSize = 0;
         _serverPort = 0;
         _pingPortName = null;
         _client = null;
+        if (_fetcherKey != null) {
+            PodFetcher.release(_fetcherKey);
+        } else if (_fetcher != null) {
+            _fetcher.shutdown();
+        }
+        _fetcher = null;
+        _fetcherKey = null;
         super.destroy();
     }
 
     @Override
-    protected synchronized List<InetSocketAddress> doReadAll(String clusterName) {
+    public void start() throws Exception {
+        super.start();
+        if (_fetcher != null) {
+            _fetcher.start();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (_fetcher != null) {
+            _fetcher.stop();
+        }
+        super.stop();
+    }
+
+    @Override
+    protected synchronized List<InetSocketAddress> doReadAll(String clusterName) throws Exception {
         Client client = getClient();
+        PodFetcher fetcher = _fetcher;
+        ParallelPodLister lister = fetcher.getLister();
         List<Pod> pods;
         try {
-            pods = client.getPods(_namespace, _labels);
+            pods = fetcher.getPods();
             _hasLoggedPermissionError = false;
         } catch (Exception e) {
             if (!_hasLoggedPermissionError) {
                 _hasLoggedPermissionError = true;
-                log.warn(String.format("Problem getting Pod json from Kubernetes %s for cluster [%s], namespace [%s], labels [%s]; encountered [%s: %s]",
-                        client.info(), clusterName, _namespace, _labels, e.getClass().getName(), e.getMessage()));
+                log.warn(String.format("Problem getting Pod json from Kubernetes %s for cluster [%s], namespace [%s], labels [%s], fields [%s]; encountered [%s: %s]",
+                        client.info(), clusterName, lister != null ? lister.getSources() : _namespace, _labels, _fields, e.getClass().getName(), e.getMessage()));
             }
-            pods = Collections.<Pod>emptyList();
+            throw e;
         }
-        List<InetSocketAddress> retval = new ArrayList<>();
+        Set<InetSocketAddress> retval = new LinkedHashSet<>();
         for (Pod pod : pods) {
             List<Container> containers = pod.getContainers();
             for (Container container : containers) {
@@ -217,7 +440,56 @@ public class KubePing extends OpenshiftPing {
                 }
             }
         }
-        return retval;
+        return new ArrayList<>(retval);
+    }
+
+    @Override
+    public boolean isCircuitBreakerOpen() {
+        // a shared fetcher has a circuit breaker of its own
+        PodFetcher fetcher = _fetcher;
+        if (fetcher == null) {
+            return super.isCircuitBreakerOpen();
+        }
+        CircuitBreaker circuitBreaker = fetcher.getClient().getRetryPolicy().getCircuitBreaker();
+        return circuitBreaker != null && circuitBreaker.isOpen();
+    }
+
+    @ManagedAttribute(description = "Requests sent to an alternate API server endpoint as well, as the first one was slow")
+    public int getHedgedRequests() {
+        int hedged = 0;
+        PodFetcher fetcher = _fetcher;
+        if (fetcher != null) {
+            for (HedgedRequests hedgedRequests : fetcher.getHedgedRequests()) {
+                hedged += hedgedRequests.getHedged();
+            }
+        }
+        return hedged;
+    }
+
+    @ManagedAttribute(description = "Hedged requests answered first by the alternate API server endpoint")
+    public int getHedgeWins() {
+        int wins = 0;
+        PodFetcher fetcher = _fetcher;
+        if (fetcher != null) {
+            for (HedgedRequests hedgedRequests : fetcher.getHedgedRequests()) {
+                wins += hedgedRequests.getHedgeWins();
+            }
+        }
+        return wins;
+    }
+
+    @ManagedAttribute(description = "The time the last list of each source took, in milliseconds; -1 if it failed")
+    public String getSourceLatencies() {
+        PodFetcher fetcher = _fetcher;
+        ParallelPodLister lister = fetcher != null ? fetcher.getLister() : null;
+        if (lister == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (PodSource source : lister.getSources()) {
+            sb.append(sb.length() > 0 ? ", " : "").append(source).append('=').append(source.getLatency());
+        }
+        return sb.toString();
     }
 
 }
@@ -0,0 +1,280 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * The pages of the last pod list read by a {@link Client}, with a digest of each page body.
+ * <p/>
+ * The list metadata (resourceVersion, continue) changes with every write to any pod the server
+ * knows of, so it is left out of the digest. A page whose remaining body has the same digest as the
+ * same page of the previous list is not parsed again; its previously built pods are reused.
+ * <p/>
+ * The digest is computed while the page is read. Only a page which has a previous page to be compared
+ * with is buffered before it is parsed; the others are parsed as they stream in.
+ */
+final class ListCache {
+    private static final byte[] METADATA = "metadata".getBytes(StandardCharsets.UTF_8);
+
+    private final String key;
+    private final List<byte[]> digests = new ArrayList<byte[]>();
+    private final List<List<Pod>> pages = new ArrayList<List<Pod>>();
+    private String resourceVersion;
+    private int reused;
+
+    /**
+     * @param key identifies the list request, without its paging parameters
+     */
+    ListCache(String key) {
+        this.key = key;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    /**
+     * @return the resourceVersion of the first page
+     */
+    String getResourceVersion() {
+        return resourceVersion;
+    }
+
+    /**
+     * @return the number of pages which were reused from the previous list
+     */
+    int getReused() {
+        return reused;
+    }
+
+    /**
+     * Reads the next page and adds its pods to the given pods.
+     *
+     * @param previous the previous list of the same request, or null
+     * @return the continue token, or null if this was the last page
+     */
+    String readPage(InputStream stream, ListCache previous, PodListReader reader, List<Pod> pods) throws IOException {
+        int page = pages.size();
+        List<Pod> previousPods = previous != null && page < previous.pages.size() ? previous.pages.get(page) : null;
+        DigestingStream in = new DigestingStream(stream);
+        List<Pod> pagePods;
+        String cont;
+        if (previousPods == null) {
+            // nothing to compare with; parse as the page streams in
+            pagePods = new ArrayList<Pod>();
+            cont = reader.read(in, pagePods);
+            in.drain();
+        } else {
+            byte[] body = in.readFully();
+            if (Arrays.equals(in.getDigest(), previous.digests.get(page))) {
+                pagePods = previousPods;
+                cont = getContinue(in.getMetadata());
+                reused++;
+            } else {
+                pagePods = new ArrayList<Pod>();
+                cont = reader.read(new ByteArrayInputStream(body), pagePods);
+            }
+        }
+        ModelNode metadataNode = in.getMetadata();
+        if (page == 0 && metadataNode.hasDefined("resourceVersion")) {
+            resourceVersion = metadataNode.get("resourceVersion").asString();
+        }
+        digests.add(in.getDigest());
+        pages.add(pagePods);
+        pods.addAll(pagePods);
+        return cont;
+    }
+
+    private static String getContinue(ModelNode metadataNode) {
+        String cont = metadataNode.hasDefined("continue") ? metadataNode.get("continue").asString() : null;
+        return cont != null && cont.length() > 0 ? cont : null;
+    }
+
+    /**
+     * Digests the bytes read through it, but for the value of the top level metadata member, which it keeps apart.
+     */
+    static final class DigestingStream extends FilterInputStream {
+        private final MessageDigest md;
+        private final ByteArrayOutputStream metadata = new ByteArrayOutputStream(256);
+        private final byte[] name = new byte[METADATA.length];
+        private int nameLength;
+        private int depth;
+        private boolean inString;
+        private boolean escape;
+        // 1 after the metadata name, 2 after its colon
+        private int afterName;
+        private int metadataDepth;
+        private byte[] digest;
+
+        DigestingStream(InputStream in) {
+            super(in);
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException nsae) {
+                throw new IllegalStateException(nsae);
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            for (int i = 0; i < n; i++) {
+                update(b[off + i]);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            long skipped = 0;
+            int read;
+            while (skipped < n && (read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length))) != -1) {
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void update(byte b) {
+            if (metadataDepth > 0) {
+                metadata.write(b);
+                if (inString) {
+                    updateString(b);
+                } else if (b == '"') {
+                    inString = true;
+                } else if (b == '{' || b == '[') {
+                    metadataDepth++;
+                } else if (b == '}' || b == ']') {
+                    metadataDepth--;
+                }
+                return;
+            }
+            if (!inString && afterName == 2 && b == '{') {
+                // the value of the metadata member
+                afterName = 0;
+                metadataDepth = 1;
+                metadata.write(b);
+                return;
+            }
+            md.update(b);
+            if (inString) {
+                if (updateString(b)) {
+                    afterName = depth == 1 && nameLength == METADATA.length && Arrays.equals(name, METADATA) ? 1 : 0;
+                } else if (depth == 1 && nameLength >= 0) {
+                    nameLength = nameLength < name.length ? nameLength + 1 : -1;
+                    if (nameLength > 0) {
+                        name[nameLength - 1] = b;
+                    }
+                }
+            } else if (b == '"') {
+                inString = true;
+                nameLength = 0;
+                afterName = 0;
+            } else if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                return;
+            } else if (afterName == 1 && b == ':') {
+                afterName = 2;
+            } else {
+                afterName = 0;
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            }
+        }
+
+        /**
+         * @return true at the closing quote of the string
+         */
+        private boolean updateString(byte b) {
+            if (escape) {
+                escape = false;
+            } else if (b == '\\') {
+                escape = true;
+            } else if (b == '"') {
+                inString = false;
+                return true;
+            }
+            return false;
+        }
+
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) != -1) {
+            }
+        }
+
+        byte[] readFully() throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(8192);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+
+        /**
+         * @return the digest of what was read, which must be all
+         */
+        byte[] getDigest() {
+            if (digest == null) {
+                digest = md.digest();
+            }
+            return digest;
+        }
+
+        /**
+         * @return the top level metadata read so far, undefined if there was none
+         */
+        ModelNode getMetadata() {
+            if (metadata.size() == 0 || metadataDepth > 0) {
+                return new ModelNode();
+            }
+            return ModelNode.fromJSONString(new String(metadata.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lists the pods of several {@link PodSource}s concurrently, so a refresh takes as long as the slowest
+ * source rather than the sum of all of them.
+ * <p/>
+ * The pods are concatenated in the order of the sources; pods matched by more than one source are
+ * left to the caller to de-duplicate, by their discovered address. A source which fails is
+ * skipped; only if all of them fail is the first failure thrown.
+ */
+public class ParallelPodLister {
+    private static final Logger log = Logger.getLogger(ParallelPodLister.class.getName());
+
+    private final Client client;
+    private final List<PodSource> sources;
+    private final String fields;
+    private final int pageSize;
+    private final ExecutorService executor;
+
+    /**
+     * @param threads the maximum number of sources listed at the same time
+     */
+    public ParallelPodLister(Client client, List<PodSource> sources, String fields, int pageSize, int threads) {
+        this.client = client;
+        this.sources = sources;
+        this.fields = fields;
+        this.pageSize = pageSize;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sources.size())), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "ParallelPodLister-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public List<PodSource> getSources() {
+        return sources;
+    }
+
+    public List<Pod> getPods() throws Exception {
+        List<Future<List<Pod>>> futures = new ArrayList<Future<List<Pod>>>(sources.size());
+        for (final PodSource source : sources) {
+            futures.add(executor.submit(new Callable<List<Pod>>() {
+                public List<Pod> call() throws Exception {
+                    long start = System.nanoTime();
+                    try {
+                        List<Pod> pods = client.getPods(source.getNamespace(), source.getLabels(), fields, pageSize);
+                        source.setLatency(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                        return pods;
+                    } catch (Exception e) {
+                        source.setLatency(-1);
+                        throw e;
+                    }
+                }
+            }));
+        }
+        List<Pod> pods = new ArrayList<Pod>();
+        Exception failure = null;
+        int failed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            PodSource source = sources.get(i);
+            try {
+                pods.addAll(futures.get(i).get());
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine(String.format("Listed pods of source [%s] in %s ms", source, source.getLatency()));
+                }
+            } catch (ExecutionException ee) {
+                Exception e = ee.getCause() instanceof Exception ? (Exception) ee.getCause() : ee;
+                failure = failure != null ? failure : e;
+                failed++;
+                if (log.isLoggable(Level.FINE)) {
+                    log.fine(String.format("Could not list pods of source [%s]: %s", source, e));
+                }
+            }
+        }
+        if (failed == futures.size() && failure != null) {
+            throw failure;
+        }
+        return pods;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+}
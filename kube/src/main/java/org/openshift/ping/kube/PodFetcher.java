@@ -0,0 +1,193 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fetches the pods for a {@link KubePing}: from EndpointSlices, from several sources, from the pod
+ * informer once synced, or else by listing them.
+ * <p/>
+ * A fetcher can be shared by the KubePing instances of all channels of the JVM which discover the same
+ * pods (see {@link #acquire}); the pods fetched are then kept for the snapshot time to live, so that
+ * the channels discovering one after the other cause a single request.
+ */
+public final class PodFetcher {
+    private static final Logger log = Logger.getLogger(PodFetcher.class.getName());
+
+    private static final Map<String, PodFetcher> shared = new HashMap<String, PodFetcher>();
+
+    private final Client client;
+    private final String namespace;
+    private final String labels;
+    private final String fields;
+    private final int pageSize;
+    private final long snapshotTtlNanos;
+    private final List<HedgedRequests> hedgedRequests = new CopyOnWriteArrayList<HedgedRequests>();
+
+    private PodInformer informer;
+    private EndpointSliceCache endpointSlices;
+    private ParallelPodLister lister;
+
+    private List<Pod> snapshot;
+    private long snapshotTime;
+    private int started;
+    private int references;
+
+    /**
+     * Creates a fetcher when there is none to share yet.
+     */
+    public interface Factory {
+        PodFetcher create() throws Exception;
+    }
+
+    /**
+     * @param snapshotTtl the time the fetched pods are reused for, in milliseconds; 0 to fetch them on every call
+     */
+    public PodFetcher(Client client, String namespace, String labels, String fields, int pageSize, long snapshotTtl) {
+        this.client = client;
+        this.namespace = namespace;
+        this.labels = labels;
+        this.fields = fields;
+        this.pageSize = pageSize;
+        this.snapshotTtlNanos = TimeUnit.MILLISECONDS.toNanos(snapshotTtl);
+    }
+
+    /**
+     * Returns the fetcher shared under the given key, creating it first if there is none.
+     * Each call has to be matched by a {@link #release} with the same key.
+     *
+     * @param key identifies the pods fetched, i.e. the master URL, namespace, labels and port name
+     */
+    public static PodFetcher acquire(String key, Factory factory) throws Exception {
+        synchronized (shared) {
+            PodFetcher fetcher = shared.get(key);
+            if (fetcher == null) {
+                fetcher = factory.create();
+                shared.put(key, fetcher);
+            } else if (log.isLoggable(Level.FINE)) {
+                log.fine(String.format("Sharing the pod fetcher of [%s] with %s other protocol(s)", key, fetcher.references));
+            }
+            fetcher.references++;
+            return fetcher;
+        }
+    }
+
+    /**
+     * Releases the fetcher shared under the given key, shutting it down when it is no longer used.
+     */
+    public static void release(String key) {
+        synchronized (shared) {
+            PodFetcher fetcher = shared.get(key);
+            if (fetcher != null && --fetcher.references == 0) {
+                shared.remove(key);
+                fetcher.shutdown();
+            }
+        }
+    }
+
+    Client getClient() {
+        return client;
+    }
+
+    void setInformer(PodInformer informer) {
+        this.informer = informer;
+    }
+
+    void setEndpointSlices(EndpointSliceCache endpointSlices) {
+        this.endpointSlices = endpointSlices;
+    }
+
+    ParallelPodLister getLister() {
+        return lister;
+    }
+
+    void setLister(ParallelPodLister lister) {
+        this.lister = lister;
+    }
+
+    List<HedgedRequests> getHedgedRequests() {
+        return hedgedRequests;
+    }
+
+    void addHedgedRequests(HedgedRequests hedgedRequests) {
+        if (hedgedRequests != null) {
+            this.hedgedRequests.add(hedgedRequests);
+        }
+    }
+
+    public synchronized List<Pod> getPods() throws Exception {
+        long now = System.nanoTime();
+        if (snapshot != null && now - snapshotTime < snapshotTtlNanos) {
+            return snapshot;
+        }
+        List<Pod> pods;
+        if (lister != null) {
+            pods = lister.getPods();
+        } else if (endpointSlices != null) {
+            pods = endpointSlices.getPods();
+        } else if (informer != null && informer.isSynced()) {
+            pods = informer.getPods();
+        } else {
+            pods = client.getPods(namespace, labels, fields, pageSize);
+        }
+        if (snapshotTtlNanos > 0) {
+            snapshot = pods;
+            snapshotTime = now;
+        }
+        return pods;
+    }
+
+    /**
+     * Starts the pod informer, if any, with the first protocol started.
+     */
+    public synchronized void start() {
+        if (started++ == 0 && informer != null) {
+            informer.start();
+        }
+    }
+
+    /**
+     * Stops the pod informer, if any, with the last protocol stopped.
+     */
+    public synchronized void stop() {
+        if (started > 0 && --started == 0 && informer != null) {
+            informer.stop();
+        }
+    }
+
+    public synchronized void shutdown() {
+        if (informer != null && started > 0) {
+            informer.stop();
+        }
+        started = 0;
+        if (lister != null) {
+            lister.shutdown();
+        }
+        for (HedgedRequests hr : hedgedRequests) {
+            hr.shutdown();
+        }
+        snapshot = null;
+    }
+
+}
@@ -0,0 +1,262 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jboss.dmr.ModelNode;
+
+/**
+ * Keeps a local cache of the discovery candidate pods current.
+ * <p/>
+ * Does one initial list, then follows the watch stream from the list's resourceVersion.
+ * When the watch reports an error (usually 410 Gone, meaning the resourceVersion is too old),
+ * or the watch cannot be opened, the pods are listed again.
+ * <p/>
+ * Each start runs a new thread. A thread left over from before a stop may still be finishing a
+ * request; it publishes nothing once it is no longer the current thread.
+ */
+public class PodInformer {
+    private static final Logger log = Logger.getLogger(PodInformer.class.getName());
+
+    private static final String OP = "pods";
+
+    private final Client client;
+    private final String namespace;
+    private final String labels;
+    private final String fields;
+    private final int pageSize;
+    private final int watchTimeout;
+    private final long retrySleep;
+
+    private volatile Map<String, Pod> pods = Collections.emptyMap();
+    private volatile boolean synced;
+    private volatile InputStream watchStream;
+    private String resourceVersion;
+    private volatile Thread thread;
+
+    /**
+     * @param client the client
+     * @param namespace the namespace
+     * @param labels the label selector
+     * @param fields the field selector
+     * @param pageSize the maximum number of pods per list request, 0 for no limit
+     * @param watchTimeout the server side timeout of a single watch, in seconds
+     * @param retrySleep the sleep before relisting after a failure, in milliseconds
+     */
+    public PodInformer(Client client, String namespace, String labels, String fields, int pageSize, int watchTimeout, long retrySleep) {
+        this.client = client;
+        this.namespace = namespace;
+        this.labels = labels;
+        this.fields = fields;
+        this.pageSize = pageSize;
+        this.watchTimeout = watchTimeout;
+        this.retrySleep = retrySleep;
+    }
+
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                public void run() {
+                    inform();
+                }
+            }, String.format("%s[namespace=%s, labels=%s, fields=%s]", getClass().getSimpleName(), namespace, labels, fields));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            closeWatchStream();
+            thread = null;
+        }
+        synced = false;
+        pods = Collections.emptyMap();
+        resourceVersion = null;
+    }
+
+    /**
+     * @return true if the calling thread is the one started last and not stopped since
+     */
+    private boolean isCurrent() {
+        return thread == Thread.currentThread();
+    }
+
+    /**
+     * @return true once the initial list has completed
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public List<Pod> getPods() {
+        return new ArrayList<Pod>(pods.values());
+    }
+
+    private void inform() {
+        boolean relist = true;
+        while (isCurrent()) {
+            try {
+                if (relist) {
+                    list();
+                }
+                relist = !watch();
+            } catch (Exception e) {
+                if (!isCurrent()) {
+                    break;
+                }
+                if (log.isLoggable(Level.WARNING)) {
+                    log.warning(String.format("Problem watching pods in namespace [%s], labels [%s]; relisting in %sms. Encountered [%s: %s]",
+                            namespace, labels, retrySleep, e.getClass().getName(), e.getMessage()));
+                }
+                relist = true;
+                try {
+                    Thread.sleep(retrySleep);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    private void list() throws Exception {
+        String limit = pageSize > 0 ? String.valueOf(pageSize) : null;
+        Map<String, Pod> listed = new ConcurrentHashMap<String, Pod>();
+        String cont = null;
+        ModelNode resourceVersionNode;
+        do {
+            ModelNode root = client.getNode(OP, namespace, labels, fields, "limit", limit, "continue", cont);
+            for (ModelNode itemNode : root.get("items").asList()) {
+                Pod pod = Client.toPod(itemNode);
+                if (pod != null) {
+                    listed.put(getKey(itemNode), pod);
+                }
+            }
+            // all pages of a list share the resourceVersion of the first one
+            resourceVersionNode = root.get("metadata", "resourceVersion");
+            cont = Client.getContinue(root);
+        } while (cont != null);
+        synchronized (this) {
+            if (!isCurrent()) {
+                // stopped while listing
+                return;
+            }
+            resourceVersion = resourceVersionNode.isDefined() ? resourceVersionNode.asString() : null;
+            pods = listed;
+            synced = true;
+        }
+        if (log.isLoggable(Level.FINE)) {
+            log.fine(String.format("Listed pods in namespace [%s], labels [%s] at resourceVersion [%s]: %s", namespace, labels, resourceVersion, listed));
+        }
+    }
+
+    /**
+     * @return false if the pods need to be listed again before the next watch
+     */
+    private boolean watch() throws Exception {
+        String fromResourceVersion;
+        Map<String, Pod> current;
+        synchronized (this) {
+            fromResourceVersion = resourceVersion;
+            current = pods;
+        }
+        InputStream stream = client.watch(OP, namespace, labels, fields, fromResourceVersion, watchTimeout);
+        synchronized (this) {
+            if (!isCurrent()) {
+                // stopped while opening the watch
+                stream.close();
+                return true;
+            }
+            watchStream = stream;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"))) {
+            String line;
+            while (isCurrent() && (line = reader.readLine()) != null) {
+                if (line.trim().length() == 0) {
+                    continue;
+                }
+                ModelNode event = ModelNode.fromJSONString(line);
+                String type = event.get("type").asString();
+                ModelNode objectNode = event.get("object");
+                if ("ERROR".equals(type)) {
+                    if (log.isLoggable(Level.FINE)) {
+                        log.fine(String.format("Watch of pods in namespace [%s], labels [%s] at resourceVersion [%s] ended with code [%s]; relisting",
+                                namespace, labels, resourceVersion, objectNode.get("code").asString()));
+                    }
+                    return false;
+                }
+                ModelNode resourceVersionNode = objectNode.get("metadata", "resourceVersion");
+                String key = "BOOKMARK".equals(type) ? null : getKey(objectNode);
+                Pod pod = key == null || "DELETED".equals(type) ? null : Client.toPod(objectNode);
+                synchronized (this) {
+                    if (!isCurrent()) {
+                        // stopped while reading the event
+                        break;
+                    }
+                    if (resourceVersionNode.isDefined()) {
+                        resourceVersion = resourceVersionNode.asString();
+                    }
+                    if (key == null) {
+                        continue;
+                    }
+                    // the map of the last list, not of a list since
+                    if (pod != null) {
+                        current.put(key, pod);
+                    } else {
+                        current.remove(key);
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                if (watchStream == stream) {
+                    watchStream = null;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void closeWatchStream() {
+        InputStream stream = watchStream;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static String getKey(ModelNode podNode) {
+        ModelNode metadataNode = podNode.get("metadata");
+        return metadataNode.get("namespace").asString() + "/" + metadataNode.get("name").asString();
+    }
+
+}
@@ -0,0 +1,45 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Requests and reads the representation of a pod list used by {@link Client#getPods}.
+ */
+public interface PodListReader {
+
+    /**
+     * @return the Accept header to send, or null for the API server default (application/json)
+     */
+    public String getAccept();
+
+    /**
+     * @return additional query parameters as name/value pairs
+     */
+    public String[] getParams();
+
+    /**
+     * Reads the pods of a list, or of one page of a list, and adds them to the given pods.
+     *
+     * @return the continue token, or null if this was the last page
+     */
+    public String read(InputStream stream, List<Pod> pods) throws IOException;
+
+}
@@ -0,0 +1,77 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import static org.openshift.ping.common.Utils.trimToNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A namespace and label selector to list pods from.
+ */
+public final class PodSource {
+    private final String namespace;
+    private final String labels;
+    private volatile long latency = -1;
+
+    public PodSource(String namespace, String labels) {
+        this.namespace = namespace;
+        this.labels = labels;
+    }
+
+    /**
+     * Parses sources like <code>ns1;ns2:app=b,tier=c</code>, i.e. semicolon separated namespaces,
+     * each optionally followed by a colon and its label selector.
+     *
+     * @param defaultLabels the label selector of a namespace without one
+     */
+    public static List<PodSource> parse(String sources, String defaultLabels) {
+        List<PodSource> list = new ArrayList<PodSource>();
+        for (String source : sources.split(";")) {
+            int colon = source.indexOf(':');
+            String namespace = trimToNull(colon < 0 ? source : source.substring(0, colon));
+            if (namespace != null) {
+                list.add(new PodSource(namespace, colon < 0 ? defaultLabels : trimToNull(source.substring(colon + 1))));
+            }
+        }
+        return list;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getLabels() {
+        return labels;
+    }
+
+    /**
+     * @return the time the last list took, in milliseconds, or -1 if it failed or there was none
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public String toString() {
+        return labels != null ? namespace + ":" + labels : namespace;
+    }
+}
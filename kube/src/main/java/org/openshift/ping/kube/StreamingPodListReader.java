@@ -0,0 +1,209 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming reader for a PodList.
+ * <p/>
+ * Reads only status.phase, status.podIP and the named container ports of each item;
+ * everything else (annotations, managedFields, env, volumes, ...) is skipped.
+ * Produces the same pods as {@link Client#toPod(org.jboss.dmr.ModelNode)}.
+ */
+final class StreamingPodListReader implements PodListReader {
+    private static final String[] PARAMS = new String[0];
+
+    @Override
+    public String getAccept() {
+        return null;
+    }
+
+    @Override
+    public String[] getParams() {
+        return PARAMS;
+    }
+
+    @Override
+    public String read(InputStream stream, List<Pod> pods) throws IOException {
+        String cont = null;
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, "UTF-8"));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("metadata".equals(name) && !reader.nextNull()) {
+                cont = readContinue(reader);
+            } else if ("items".equals(name) && !reader.nextNull()) {
+                readItems(reader, pods);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return cont;
+    }
+
+    /**
+     * Reads the continue token of the list metadata.
+     */
+    static String readContinue(JsonReader reader) throws IOException {
+        String cont = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("continue".equals(name)) {
+                cont = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return cont != null && cont.length() > 0 ? cont : null;
+    }
+
+    /**
+     * Reads an array of pods.
+     */
+    static void readItems(JsonReader reader, List<Pod> pods) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Pod pod = readPod(reader);
+            if (pod != null) {
+                pods.add(pod);
+            }
+        }
+        reader.endArray();
+    }
+
+    private static Pod readPod(JsonReader reader) throws IOException {
+        if (reader.nextNull()) {
+            return null;
+        }
+        String phase = null;
+        String podIP = null;
+        List<Container> containers = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("spec".equals(name) && !reader.nextNull()) {
+                containers = readSpec(reader);
+            } else if ("status".equals(name) && !reader.nextNull()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String statusName = reader.nextName();
+                    if ("phase".equals(statusName)) {
+                        phase = reader.nextString();
+                    } else if ("podIP".equals(statusName)) {
+                        podIP = reader.nextString();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!"Running".equals(phase) || podIP == null || containers == null) {
+            return null;
+        }
+        Pod pod = new Pod(podIP);
+        for (Container container : containers) {
+            pod.addContainer(container);
+        }
+        return pod;
+    }
+
+    private static List<Container> readSpec(JsonReader reader) throws IOException {
+        List<Container> containers = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("containers".equals(name) && !reader.nextNull()) {
+                containers = new ArrayList<Container>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Container container = readContainer(reader);
+                    if (container != null) {
+                        containers.add(container);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return containers;
+    }
+
+    private static Container readContainer(JsonReader reader) throws IOException {
+        if (reader.nextNull()) {
+            return null;
+        }
+        Container container = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("ports".equals(name) && !reader.nextNull()) {
+                container = new Container();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    Port port = readPort(reader);
+                    if (port != null) {
+                        container.addPort(port);
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return container;
+    }
+
+    private static Port readPort(JsonReader reader) throws IOException {
+        if (reader.nextNull()) {
+            return null;
+        }
+        String portName = null;
+        String containerPort = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("name".equals(name)) {
+                portName = reader.nextString();
+            } else if ("containerPort".equals(name)) {
+                containerPort = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (portName == null || containerPort == null) {
+            return null;
+        }
+        return new Port(portName, Integer.parseInt(containerPort));
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Requests the pods as a server side Table (meta.k8s.io) without the pod objects,
+ * so each pod is only a row of short cells (name, ready, status, restarts, age, IP, node, ...).
+ * <p/>
+ * A Table does not carry the container ports, so every pod with an IP is reported with a single
+ * container exposing the given ping port; the label selector is expected to match only pods
+ * which expose it. The Table has no phase column either: use it together with the
+ * status.phase=Running field selector. Rows whose status shows a terminal or pending phase are
+ * dropped on the client side as well.
+ * <p/>
+ * Servers which cannot produce a Table fall back to application/json, which is read as a PodList.
+ */
+public final class TablePodListReader implements PodListReader {
+    static final String ACCEPT = "application/json;as=Table;v=v1;g=meta.k8s.io,application/json;as=Table;v=v1beta1;g=meta.k8s.io,application/json";
+
+    private static final String[] PARAMS = new String[]{"includeObject", "None"};
+
+    private static final Set<String> NOT_RUNNING = new HashSet<String>(Arrays.asList("Pending", "Succeeded", "Completed", "Failed", "Evicted", "Unknown"));
+
+    private final String pingPortName;
+    private final int pingPort;
+
+    public TablePodListReader(String pingPortName, int pingPort) {
+        this.pingPortName = pingPortName;
+        this.pingPort = pingPort;
+    }
+
+    @Override
+    public String getAccept() {
+        return ACCEPT;
+    }
+
+    @Override
+    public String[] getParams() {
+        return PARAMS;
+    }
+
+    @Override
+    public String read(InputStream stream, List<Pod> pods) throws IOException {
+        String cont = null;
+        int statusColumn = -1;
+        int ipColumn = -1;
+        List<String[]> rows = new ArrayList<String[]>();
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, "UTF-8"));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("metadata".equals(name) && !reader.nextNull()) {
+                cont = StreamingPodListReader.readContinue(reader);
+            } else if ("columnDefinitions".equals(name) && !reader.nextNull()) {
+                List<String> columns = readColumns(reader);
+                statusColumn = columns.indexOf("Status");
+                ipColumn = columns.indexOf("IP");
+            } else if ("rows".equals(name) && !reader.nextNull()) {
+                readRows(reader, rows);
+            } else if ("items".equals(name) && !reader.nextNull()) {
+                // not a Table
+                StreamingPodListReader.readItems(reader, pods);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!rows.isEmpty() && ipColumn < 0) {
+            throw new IOException("Pod Table has no IP column");
+        }
+        for (String[] cells : rows) {
+            String status = statusColumn >= 0 && statusColumn < cells.length ? cells[statusColumn] : null;
+            String podIP = ipColumn < cells.length ? cells[ipColumn] : null;
+            if (NOT_RUNNING.contains(status) || podIP == null || podIP.length() == 0 || podIP.startsWith("<")) {
+                continue;
+            }
+            Container container = new Container();
+            container.addPort(new Port(pingPortName, pingPort));
+            Pod pod = new Pod(podIP);
+            pod.addContainer(container);
+            pods.add(pod);
+        }
+        return cont;
+    }
+
+    private static List<String> readColumns(JsonReader reader) throws IOException {
+        List<String> columns = new ArrayList<String>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String column = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("name".equals(reader.nextName())) {
+                    column = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            columns.add(column);
+        }
+        reader.endArray();
+        return columns;
+    }
+
+    private static void readRows(JsonReader reader, List<String[]> rows) throws IOException {
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("cells".equals(reader.nextName()) && !reader.nextNull()) {
+                    List<String> cells = new ArrayList<String>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        cells.add(reader.nextScalar());
+                    }
+                    reader.endArray();
+                    rows.add(cells.toArray(new String[cells.size()]));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+}
@@ -0,0 +1,98 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube.test;
+
+import static org.openshift.ping.common.Utils.readFileToString;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.Map;
+
+import org.jgroups.conf.ClassConfigurator;
+import org.jgroups.protocols.TCP;
+import org.jgroups.protocols.TP;
+import org.jgroups.stack.Protocol;
+import org.junit.Assert;
+import org.openshift.ping.common.RetryPolicy;
+import org.openshift.ping.common.stream.StreamProvider;
+import org.openshift.ping.kube.Client;
+import org.openshift.ping.kube.HedgedRequests;
+import org.openshift.ping.kube.KubePing;
+import org.openshift.ping.kube.PodListReader;
+
+/**
+ * Forms a cluster of members on 127.0.0.1 and 127.0.0.2, which discover each other off the pods listed,
+ * with the discovery requests sent in a batch straight to the transport.
+ */
+public class BatchDiscoveryTest extends PingTestBase {
+
+    /**
+     * The members listen on the same port, as pods do, which is where the discovery requests are sent.
+     */
+    @Override
+    protected TP createTransport(int i) throws Exception {
+        TP transport = new TCP();
+        transport.setBindAddress(InetAddress.getByName("127.0.0." + (i + 1)));
+        transport.setBindPort(7800);
+        transport.setPortRange(0);
+        return transport;
+    }
+
+    @Override
+    protected Protocol createPing() {
+        KubePing ping = new BatchKubePing();
+        ping.setMasterProtocol("http");
+        ping.setMasterHost("localhost");
+        ping.setMasterPort(8080);
+        ping.setNamespace("batch");
+        ping.setValue("batchDiscovery", true);
+        return ping;
+    }
+
+    @Override
+    protected void doTestCluster() throws Exception {
+        super.doTestCluster();
+        for (int i = 0; i < getNum(); i++) {
+            Protocol ping = channels[i].getProtocolStack().findProtocol(BatchKubePing.class);
+            // not turned off for want of support
+            Assert.assertEquals(Boolean.TRUE, ping.getValue("_batchDiscovery"));
+        }
+    }
+
+    private static final class BatchKubePing extends KubePing {
+        static {
+            ClassConfigurator.addProtocol((short) (JGROUPS_KUBE_PING_ID + 100), BatchKubePing.class);
+        }
+
+        @Override
+        protected Client createClient(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, RetryPolicy retryPolicy,
+                StreamProvider streamProvider, PodListReader podListReader, HedgedRequests hedgedRequests) {
+            return new TestClient() {
+                @Override
+                protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                    String json = readFileToString(new File(BatchDiscoveryTest.class.getResource("/pods.json").toURI()));
+                    // the second pod on the second address
+                    int second = json.lastIndexOf("\"podIP\": \"127.0.0.1\"");
+                    json = json.substring(0, second) + "\"podIP\": \"127.0.0.2\"" + json.substring(second + "\"podIP\": \"127.0.0.1\"".length());
+                    return new ByteArrayInputStream(json.getBytes("UTF-8"));
+                }
+            };
+        }
+    }
+}
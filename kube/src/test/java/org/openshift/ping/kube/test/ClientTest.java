@@ -16,14 +16,31 @@
 
 package org.openshift.ping.kube.test;
 
+import static org.openshift.ping.common.Utils.readFileToString;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Assert;
 import org.junit.Test;
 import org.openshift.ping.kube.Client;
 import org.openshift.ping.kube.Container;
+import org.openshift.ping.common.RetryPolicy;
+import org.openshift.ping.common.stream.HttpStatusException;
+import org.openshift.ping.common.stream.StreamProvider;
 import org.openshift.ping.kube.Pod;
+import org.openshift.ping.kube.PodInformer;
+import org.openshift.ping.kube.PodListReader;
 import org.openshift.ping.kube.Port;
+import org.openshift.ping.kube.TablePodListReader;
 
 /**
  * @author <a href="mailto:ales.justin@jboss.org">Ales Justin</a>
@@ -46,4 +63,237 @@ public class ClientTest {
         Assert.assertEquals(8080, port.getContainerPort());
     }
 
+    @Test
+    public void testFieldSelector() throws Exception {
+        final String[] requested = new String[1];
+        Client client = new TestClient() {
+            @Override
+            protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                requested[0] = fields;
+                return super.getStream(op, namespace, labels, fields, params);
+            }
+        };
+        Assert.assertEquals(2, client.getPods(null, null, "status.phase=Running").size());
+        Assert.assertEquals("status.phase=Running", requested[0]);
+    }
+
+    @Test
+    public void testPagination() throws Exception {
+        for (boolean streamingParser : new boolean[]{true, false}) {
+            final List<String> requests = new ArrayList<>();
+            Client client = new TestClient("/pods.json", streamingParser) {
+                @Override
+                protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                    Map<String, String> query = new HashMap<>();
+                    for (int i = 0; i < params.length; i += 2) {
+                        query.put(params[i], params[i + 1]);
+                    }
+                    requests.add(query.get("limit") + ":" + (query.get("continue") != null));
+                    String page = query.get("continue") == null ? "/pods-page-1.json" : "/pods-page-2.json";
+                    return getClass().getResourceAsStream(page);
+                }
+            };
+            List<Pod> pods = client.getPods(null, null, null, 1);
+            Assert.assertEquals(Arrays.asList("1:false", "1:true"), requests);
+            Assert.assertEquals(new TestClient().getPods(null, null).toString(), pods.toString());
+        }
+    }
+
+    @Test
+    public void testStreamingParserMatchesDmr() throws Exception {
+        for (String resource : new String[]{"/pods.json", "/pods-mixed.json"}) {
+            List<Pod> streamed = new TestClient(resource, true).getPods(null, null);
+            List<Pod> dmr = new TestClient(resource, false).getPods(null, null);
+            Assert.assertEquals(dmr.toString(), streamed.toString());
+        }
+    }
+
+    @Test
+    public void testStreamingParserSkipsUnusedFields() throws Exception {
+        List<Pod> pods = new TestClient("/pods-mixed.json", true).getPods(null, null);
+        Assert.assertEquals(2, pods.size());
+        Pod pod = pods.get(0);
+        Assert.assertEquals("10.1.0.169", pod.getPodIP());
+        Assert.assertEquals(2, pod.getContainers().size());
+        Container container = pod.getContainers().get(0);
+        Assert.assertEquals(2, container.getPorts().size());
+        Assert.assertEquals(8888, container.getPort("ping").getContainerPort());
+        Assert.assertEquals("10.1.0.170", pods.get(1).getPodIP());
+    }
+
+    @Test
+    public void testTable() throws Exception {
+        final List<String> queries = new ArrayList<>();
+        Client client = new TestClient("/pods-table.json", new TablePodListReader("ping", 8888)) {
+            @Override
+            protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                queries.add(Arrays.asList(params).subList(0, 2).toString());
+                return super.getStream(op, namespace, labels, fields, params);
+            }
+        };
+        List<Pod> pods = client.getPods(null, null);
+        Assert.assertEquals(Arrays.asList("[includeObject, None]"), queries);
+        Assert.assertEquals(2, pods.size());
+        Assert.assertEquals("10.1.0.169", pods.get(0).getPodIP());
+        Assert.assertEquals("10.1.0.170", pods.get(1).getPodIP());
+        Container container = pods.get(0).getContainers().get(0);
+        Assert.assertEquals(8888, container.getPort("ping").getContainerPort());
+    }
+
+    @Test
+    public void testTableIsOnlyRequestedForPodLists() throws Exception {
+        final Map<String, String> accepts = new HashMap<>();
+        StreamProvider streamProvider = new StreamProvider() {
+            public InputStream openStream(String url, Map<String, String> headers, int connectTimeout, int readTimeout) throws IOException {
+                String accept = headers != null ? headers.get("Accept") : null;
+                boolean watch = url.contains("watch=true");
+                accepts.put(watch ? "watch" : url.contains("includeObject") ? "list" : "node", accept);
+                if (watch) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return new ByteArrayInputStream(new byte[0]);
+                }
+                String resource = accept != null ? "/pods-table.json" : "/pods.json";
+                return ClientTest.class.getResourceAsStream(resource);
+            }
+        };
+        Client client = new Client("http://master/api/v1", null, 0, 0, new RetryPolicy(1, 0), streamProvider, new TablePodListReader("ping", 8888));
+        Assert.assertEquals(2, client.getPods(null, null).size());
+        // i.e. the lists and watches of the pod informer
+        PodInformer informer = new PodInformer(client, null, null, null, 0, 1, 10);
+        informer.start();
+        try {
+            for (int i = 0; i < 100 && !accepts.containsKey("watch"); i++) {
+                Thread.sleep(50);
+            }
+            Assert.assertTrue(informer.isSynced());
+            Assert.assertEquals(2, informer.getPods().size());
+        } finally {
+            informer.stop();
+        }
+        Assert.assertTrue(accepts.get("list").contains("as=Table"));
+        Assert.assertNull(accepts.get("node"));
+        Assert.assertNull(accepts.get("watch"));
+    }
+
+    @Test
+    public void testTableFallsBackToPodList() throws Exception {
+        List<Pod> pods = new TestClient("/pods.json", new TablePodListReader("ping", 8888)).getPods(null, null);
+        Assert.assertEquals(new TestClient().getPods(null, null).toString(), pods.toString());
+    }
+
+    @Test
+    public void testUnchangedListIsReused() throws Exception {
+        final String json = readFileToString(new File(ClientTest.class.getResource("/pods.json").toURI()));
+        final String[] body = new String[1];
+        final List<String> resourceVersions = new ArrayList<>();
+        Client client = new TestClient() {
+            @Override
+            protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                resourceVersions.add(Arrays.asList(params).subList(4, 8).toString());
+                return new ByteArrayInputStream(body[0].getBytes("UTF-8"));
+            }
+        };
+        body[0] = json.replace("\"apiVersion\": \"v1\",", "\"apiVersion\": \"v1\", \"metadata\": {\"resourceVersion\": \"1\"},");
+        List<Pod> first = client.getPods(null, null);
+        // another pod changed elsewhere; the list resourceVersion moves, the items do not
+        body[0] = json.replace("\"apiVersion\": \"v1\",", "\"apiVersion\": \"v1\", \"metadata\": {\"resourceVersion\": \"2\"},");
+        List<Pod> second = client.getPods(null, null);
+        Assert.assertEquals(2, second.size());
+        Assert.assertSame(first.get(0), second.get(0));
+        Assert.assertEquals(Arrays.asList("[resourceVersion, null, resourceVersionMatch, null]", "[resourceVersion, 1, resourceVersionMatch, NotOlderThan]"), resourceVersions);
+
+        body[0] = body[0].replaceFirst("\"podIP\": \"127.0.0.1\"", "\"podIP\": \"127.0.0.9\"");
+        List<Pod> third = client.getPods(null, null);
+        Assert.assertNotSame(first.get(0), third.get(0));
+        Assert.assertEquals("127.0.0.9", third.get(0).getPodIP());
+        Assert.assertEquals("[resourceVersion, 2, resourceVersionMatch, NotOlderThan]", resourceVersions.get(2));
+    }
+
+    @Test
+    public void testGoneResourceVersionIsListedAnew() throws Exception {
+        final List<String> resourceVersions = new ArrayList<>();
+        Client client = new TestClient() {
+            @Override
+            protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                String resourceVersion = params[5];
+                resourceVersions.add(resourceVersion);
+                if (resourceVersion != null) {
+                    // i.e. a server before 1.19, which wants exactly the compacted resourceVersion
+                    throw new HttpStatusException(410, "http://master/api/v1/pods", null);
+                }
+                String json = readFileToString(new File(ClientTest.class.getResource("/pods.json").toURI()));
+                json = json.replace("\"apiVersion\": \"v1\",", "\"apiVersion\": \"v1\", \"metadata\": {\"resourceVersion\": \"1\"},");
+                return new ByteArrayInputStream(json.getBytes("UTF-8"));
+            }
+        };
+        List<Pod> first = client.getPods(null, null, null, 1);
+        List<Pod> second = client.getPods(null, null, null, 1);
+        Assert.assertEquals(first.toString(), second.toString());
+        Assert.assertEquals(Arrays.asList(null, "1", null), resourceVersions);
+    }
+
+    @Test
+    public void testUnreachableServerIsNotListedAnew() throws Exception {
+        final List<String> resourceVersions = new ArrayList<>();
+        final boolean[] refuse = new boolean[1];
+        Client client = new TestClient() {
+            @Override
+            protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                resourceVersions.add(params[5]);
+                if (refuse[0]) {
+                    throw new ConnectException("Connection refused");
+                }
+                String json = readFileToString(new File(ClientTest.class.getResource("/pods.json").toURI()));
+                json = json.replace("\"apiVersion\": \"v1\",", "\"apiVersion\": \"v1\", \"metadata\": {\"resourceVersion\": \"1\"},");
+                return new ByteArrayInputStream(json.getBytes("UTF-8"));
+            }
+        };
+        client.getPods(null, null, null, 1);
+        refuse[0] = true;
+        try {
+            client.getPods(null, null, null, 1);
+            Assert.fail();
+        } catch (ConnectException expected) {
+        }
+        Assert.assertEquals(Arrays.asList(null, "1"), resourceVersions);
+    }
+
+    @Test
+    public void testOnlyPagesToCompareAreBuffered() throws Exception {
+        final List<Boolean> buffered = new ArrayList<>();
+        final PodListReader delegate = new TablePodListReader("ping", 8888);
+        PodListReader reader = new PodListReader() {
+            public String getAccept() {
+                return delegate.getAccept();
+            }
+
+            public String[] getParams() {
+                return delegate.getParams();
+            }
+
+            public String read(InputStream stream, List<Pod> pods) throws IOException {
+                buffered.add(stream instanceof ByteArrayInputStream);
+                return delegate.read(stream, pods);
+            }
+        };
+        final String json = readFileToString(new File(ClientTest.class.getResource("/pods.json").toURI()));
+        final String[] body = new String[]{json};
+        Client client = new TestClient("/pods.json", reader) {
+            @Override
+            protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                return new ByteArrayInputStream(body[0].getBytes("UTF-8"));
+            }
+        };
+        client.getPods(null, null);
+        client.getPods(null, null);
+        body[0] = json.replaceFirst("\"podIP\": \"127.0.0.1\"", "\"podIP\": \"127.0.0.9\"");
+        Assert.assertEquals("127.0.0.9", client.getPods(null, null).get(0).getPodIP());
+        // the first list is parsed as it streams in, the unchanged one not at all, the changed one once buffered
+        Assert.assertEquals(Arrays.asList(false, true), buffered);
+    }
+
 }
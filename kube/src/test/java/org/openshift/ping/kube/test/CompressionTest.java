@@ -0,0 +1,121 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube.test;
+
+import static org.openshift.ping.common.Utils.readFileToString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jboss.dmr.ModelNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openshift.ping.common.stream.DefaultStreamProvider;
+import org.openshift.ping.kube.Client;
+import org.openshift.ping.kube.Pod;
+
+/**
+ * Lists the pods of pods.json, scaled up, with and without a gzip compressed response.
+ */
+public class CompressionTest {
+
+    private static final int COPIES = 50;
+
+    @Test
+    public void testCompression() throws Exception {
+        final byte[] body = scaledPodList(COPIES);
+        final byte[] gzipped = gzip(body);
+        final List<String> acceptEncodings = new ArrayList<>();
+        final AtomicLong transferred = new AtomicLong();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                acceptEncodings.add(acceptEncoding);
+                byte[] response = body;
+                if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    response = gzipped;
+                }
+                transferred.set(response.length);
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        server.start();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/v1";
+            List<Pod> plain = list(url, false);
+            long plainBytes = transferred.get();
+            List<Pod> compressed = list(url, true);
+            long compressedBytes = transferred.get();
+
+            Assert.assertEquals(2, acceptEncodings.size());
+            Assert.assertTrue(acceptEncodings.get(0) == null || !acceptEncodings.get(0).contains("gzip"));
+            Assert.assertTrue(acceptEncodings.get(1).contains("gzip"));
+            Assert.assertEquals(2 * COPIES, compressed.size());
+            Assert.assertEquals(plain.toString(), compressed.toString());
+            Assert.assertTrue(compressedBytes * 5 < plainBytes);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static List<Pod> list(String url, boolean compression) throws Exception {
+        DefaultStreamProvider streamProvider = new DefaultStreamProvider();
+        streamProvider.setCompression(compression);
+        Client client = new Client(url, null, 1000, 5000, 1, 0, streamProvider);
+        return client.getPods("dward", null, null, 0);
+    }
+
+    private static byte[] scaledPodList(int copies) throws Exception {
+        ModelNode podList = ModelNode.fromJSONString(readFileToString(new File(CompressionTest.class.getResource("/pods.json").toURI())));
+        List<ModelNode> items = podList.get("items").asList();
+        ModelNode scaled = new ModelNode();
+        for (int i = 0; i < copies; i++) {
+            for (int j = 0; j < items.size(); j++) {
+                ModelNode copy = items.get(j).clone();
+                copy.get("metadata", "name").set(copy.get("metadata", "name").asString() + "-" + i);
+                copy.get("status", "podIP").set("10." + (i >> 8 & 0xff) + "." + (i & 0xff) + "." + (j + 1));
+                scaled.add(copy);
+            }
+        }
+        podList.get("items").set(scaled);
+        return podList.toJSONString(false).getBytes("UTF-8");
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+}
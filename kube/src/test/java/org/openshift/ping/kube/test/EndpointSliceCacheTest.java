@@ -0,0 +1,113 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openshift.ping.kube.Client;
+import org.openshift.ping.kube.EndpointSliceCache;
+import org.openshift.ping.kube.Pod;
+
+public class EndpointSliceCacheTest {
+
+    @Test
+    public void testRefreshFetchesChangedSlicesOnly() throws Exception {
+        final Map<String, String> slices = new HashMap<>();
+        final List<String> requests = new ArrayList<>();
+        Client client = new Client(null, null, 0, 0, 0, 0, null) {
+            @Override
+            protected ModelNode getNode(String op, String namespace, String labels, String fields, String... params) {
+                requests.add(op);
+                if (op.equals("endpointslices")) {
+                    Assert.assertEquals("kubernetes.io/service-name=ping", labels);
+                    return ModelNode.fromJSONString(list(slices, false));
+                }
+                return ModelNode.fromJSONString(slices.get(op.substring(op.indexOf('/') + 1)));
+            }
+
+            @Override
+            protected InputStream getMetadataStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                requests.add("metadata");
+                return new ByteArrayInputStream(list(slices, true).getBytes("UTF-8"));
+            }
+        };
+        EndpointSliceCache cache = new EndpointSliceCache(client, "dward", "ping");
+
+        slices.put("ping-a", slice("ping-a", "1", "10.1.0.1", "10.1.0.2"));
+        slices.put("ping-b", slice("ping-b", "1", "10.1.0.3"));
+        Assert.assertEquals(Arrays.asList("10.1.0.1", "10.1.0.2", "10.1.0.3"), ips(cache.getPods()));
+        Assert.assertEquals(Arrays.asList("endpointslices"), requests);
+
+        requests.clear();
+        slices.put("ping-b", slice("ping-b", "2", "10.1.0.3", "10.1.0.4"));
+        Assert.assertEquals(Arrays.asList("10.1.0.1", "10.1.0.2", "10.1.0.3", "10.1.0.4"), ips(cache.getPods()));
+        Assert.assertEquals(Arrays.asList("metadata", "endpointslices/ping-b"), requests);
+
+        requests.clear();
+        slices.remove("ping-a");
+        Assert.assertEquals(Arrays.asList("10.1.0.3", "10.1.0.4"), ips(cache.getPods()));
+        Assert.assertEquals(Arrays.asList("metadata"), requests);
+
+        Pod pod = cache.getPods().get(0);
+        Assert.assertEquals(8888, pod.getContainers().get(0).getPort("ping").getContainerPort());
+    }
+
+    private static String slice(String name, String resourceVersion, String... ips) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"kind\": \"EndpointSlice\", \"metadata\": {\"name\": \"").append(name)
+                .append("\", \"resourceVersion\": \"").append(resourceVersion).append("\"}, \"addressType\": \"IPv4\", \"endpoints\": [");
+        for (int i = 0; i < ips.length; i++) {
+            sb.append(i > 0 ? ", " : "").append("{\"addresses\": [\"").append(ips[i]).append("\"], \"conditions\": {\"ready\": true}}");
+        }
+        // a terminating endpoint is never discovered
+        sb.append(", {\"addresses\": [\"10.1.0.99\"], \"conditions\": {\"ready\": false, \"terminating\": true}}");
+        sb.append("], \"ports\": [{\"name\": \"ping\", \"port\": 8888, \"protocol\": \"TCP\"}]}");
+        return sb.toString();
+    }
+
+    private static String list(Map<String, String> slices, boolean metadataOnly) {
+        StringBuilder sb = new StringBuilder("{\"metadata\": {}, \"items\": [");
+        String sep = "";
+        for (String name : new TreeSet<>(slices.keySet())) {
+            String item = slices.get(name);
+            if (metadataOnly) {
+                item = "{\"metadata\": " + ModelNode.fromJSONString(item).get("metadata").toJSONString(true) + "}";
+            }
+            sb.append(sep).append(item);
+            sep = ", ";
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static List<String> ips(List<Pod> pods) {
+        List<String> ips = new ArrayList<>();
+        for (Pod pod : pods) {
+            ips.add(pod.getPodIP());
+        }
+        return ips;
+    }
+}
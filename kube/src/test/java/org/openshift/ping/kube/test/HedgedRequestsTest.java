@@ -0,0 +1,151 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openshift.ping.common.CircuitBreaker;
+import org.openshift.ping.common.RetryPolicy;
+import org.openshift.ping.common.Utils;
+import org.openshift.ping.kube.HedgedRequests;
+
+public class HedgedRequestsTest {
+
+    @Test
+    public void testSlowEndpointIsHedged() throws Exception {
+        final AtomicInteger closed = new AtomicInteger();
+        HedgedRequests.Opener opener = new HedgedRequests.Opener() {
+            public InputStream open(String url) throws Exception {
+                if (url.startsWith("http://slow")) {
+                    // like a blocking socket read, not interrupted by the cancellation
+                    long end = System.nanoTime() + 1000000000L;
+                    while (System.nanoTime() < end) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                }
+                return new ByteArrayInputStream(url.getBytes("UTF-8")) {
+                    @Override
+                    public void close() throws IOException {
+                        closed.incrementAndGet();
+                    }
+                };
+            }
+        };
+        HedgedRequests hedgedRequests = new HedgedRequests(Arrays.asList("http://fast/api/v1"), 95, 100);
+        try {
+            long start = System.nanoTime();
+            Assert.assertEquals("http://fast/api/v1/pods", read(hedgedRequests.open("http://slow/api/v1", "/pods", opener)));
+            Assert.assertTrue((System.nanoTime() - start) / 1000000 < 500);
+            Assert.assertEquals(1, hedgedRequests.getHedged());
+            Assert.assertEquals(1, hedgedRequests.getHedgeWins());
+
+            // the fast endpoint is not hedged
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals("http://fast/api/v1/pods", read(hedgedRequests.open("http://fast/api/v1", "/pods", opener)));
+            }
+            Assert.assertEquals(1, hedgedRequests.getHedged());
+
+            // the slow response of the first request was closed
+            Thread.sleep(1200);
+            Assert.assertEquals(22, closed.get());
+        } finally {
+            hedgedRequests.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedEndpointIsHedged() throws Exception {
+        HedgedRequests.Opener opener = new HedgedRequests.Opener() {
+            public InputStream open(String url) throws Exception {
+                if (url.startsWith("http://down")) {
+                    throw new IOException("Connection refused");
+                }
+                return new ByteArrayInputStream(url.getBytes("UTF-8"));
+            }
+        };
+        HedgedRequests hedgedRequests = new HedgedRequests(Arrays.asList("http://up"), 95, 100);
+        try {
+            Assert.assertEquals("http://up/pods", read(hedgedRequests.open("http://down", "/pods", opener)));
+        } finally {
+            hedgedRequests.shutdown();
+        }
+        HedgedRequests none = new HedgedRequests(Collections.<String>emptyList(), 95, 100);
+        try {
+            none.open("http://down", "/pods", opener);
+            Assert.fail();
+        } catch (IOException expected) {
+        } finally {
+            none.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancelledLegIsNoBreakerFailure() throws Exception {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 1, 60000);
+        final RetryPolicy retryPolicy = new RetryPolicy(2, 1000, 1000, 0, circuitBreaker);
+        final CountDownLatch aborted = new CountDownLatch(1);
+        HedgedRequests.Opener opener = new HedgedRequests.Opener() {
+            public InputStream open(final String url) throws Exception {
+                try {
+                    return Utils.execute(new Callable<InputStream>() {
+                        public InputStream call() throws Exception {
+                            if (url.startsWith("http://down")) {
+                                // the second attempt is never made, as the leg is cancelled in the sleep before it
+                                throw new IOException("Connection refused");
+                            }
+                            return new ByteArrayInputStream(url.getBytes("UTF-8"));
+                        }
+                    }, retryPolicy, true);
+                } catch (RuntimeException re) {
+                    aborted.countDown();
+                    throw re;
+                }
+            }
+        };
+        HedgedRequests hedgedRequests = new HedgedRequests(Arrays.asList("http://up"), 95, 100);
+        try {
+            Assert.assertEquals("http://up/pods", read(hedgedRequests.open("http://down", "/pods", opener)));
+            Assert.assertTrue(aborted.await(5, TimeUnit.SECONDS));
+            Assert.assertFalse(circuitBreaker.isOpen());
+        } finally {
+            hedgedRequests.shutdown();
+        }
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        try {
+            byte[] buffer = new byte[256];
+            int n = stream.read(buffer);
+            return new String(buffer, 0, n, "UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openshift.ping.kube.ParallelPodLister;
+import org.openshift.ping.kube.Pod;
+import org.openshift.ping.kube.PodSource;
+
+public class ParallelPodListerTest {
+
+    @Test
+    public void testParse() {
+        List<PodSource> sources = PodSource.parse("a; b:app=b,tier=c ;", "app=a");
+        Assert.assertEquals(2, sources.size());
+        Assert.assertEquals("a", sources.get(0).getNamespace());
+        Assert.assertEquals("app=a", sources.get(0).getLabels());
+        Assert.assertEquals("b", sources.get(1).getNamespace());
+        Assert.assertEquals("app=b,tier=c", sources.get(1).getLabels());
+    }
+
+    @Test
+    public void testSourcesAreListedConcurrently() throws Exception {
+        TestClient client = new TestClient() {
+            @Override
+            protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                Thread.sleep(300);
+                if (namespace.equals("broken")) {
+                    throw new IOException("Forbidden");
+                }
+                return super.getStream(op, namespace, labels, fields, params);
+            }
+        };
+        List<PodSource> sources = PodSource.parse("a;b;c;broken", null);
+        ParallelPodLister lister = new ParallelPodLister(client, sources, null, 0, 4);
+        try {
+            long start = System.nanoTime();
+            List<Pod> pods = lister.getPods();
+            long millis = (System.nanoTime() - start) / 1000000;
+            Assert.assertTrue("took " + millis + " ms", millis < 900);
+            Assert.assertEquals(3 * new TestClient().getPods(null, null).size(), pods.size());
+            Assert.assertTrue(sources.get(0).getLatency() >= 300);
+            Assert.assertEquals(-1, sources.get(3).getLatency());
+
+            lister.shutdown();
+            lister = new ParallelPodLister(client, PodSource.parse("broken", null), null, 0, 4);
+            try {
+                lister.getPods();
+                Assert.fail("expected the failure of the only source");
+            } catch (IOException expected) {
+            }
+        } finally {
+            lister.shutdown();
+        }
+    }
+}
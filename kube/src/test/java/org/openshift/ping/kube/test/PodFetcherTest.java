@@ -0,0 +1,66 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube.test;
+
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openshift.ping.kube.PodFetcher;
+
+public class PodFetcherTest {
+
+    @Test
+    public void testSharedFetcher() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger created = new AtomicInteger();
+        PodFetcher.Factory factory = new PodFetcher.Factory() {
+            public PodFetcher create() {
+                created.incrementAndGet();
+                TestClient client = new TestClient() {
+                    @Override
+                    protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                        requests.incrementAndGet();
+                        return super.getStream(op, namespace, labels, fields, params);
+                    }
+                };
+                return new PodFetcher(client, "dward", null, null, 0, 60000);
+            }
+        };
+        // i.e. the web, ejb, hibernate and server channels
+        PodFetcher[] fetchers = new PodFetcher[4];
+        for (int i = 0; i < fetchers.length; i++) {
+            fetchers[i] = PodFetcher.acquire("key", factory);
+            Assert.assertSame(fetchers[0], fetchers[i]);
+            Assert.assertEquals(2, fetchers[i].getPods().size());
+        }
+        Assert.assertEquals(1, created.get());
+        Assert.assertEquals(1, requests.get());
+
+        for (int i = 0; i < fetchers.length; i++) {
+            PodFetcher.release("key");
+        }
+        PodFetcher fetcher = PodFetcher.acquire("key", factory);
+        try {
+            Assert.assertNotSame(fetchers[0], fetcher);
+            Assert.assertEquals(2, created.get());
+        } finally {
+            PodFetcher.release("key");
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ *  Copyright 2014 Red Hat, Inc.
+ *
+ *  Red Hat licenses this file to you under the Apache License, version
+ *  2.0 (the "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or
+ *  implied.  See the License for the specific language governing
+ *  permissions and limitations under the License.
+ */
+
+package org.openshift.ping.kube.test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.dmr.ModelNode;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openshift.ping.kube.PodInformer;
+
+public class PodInformerTest {
+
+    @Test
+    public void testWatch() throws Exception {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final AtomicInteger lists = new AtomicInteger();
+        TestClient client = new TestClient() {
+            @Override
+            protected ModelNode getNode(String op, String namespace, String labels, String fields, String... params) throws Exception {
+                lists.incrementAndGet();
+                return super.getNode(op, namespace, labels, fields, params);
+            }
+
+            @Override
+            protected InputStream watch(String op, String namespace, String labels, String fields, String resourceVersion, int timeoutSeconds) {
+                return new EventStream(events);
+            }
+        };
+        PodInformer informer = new PodInformer(client, null, null, null, 0, 1, 10);
+        informer.start();
+        try {
+            waitForPods(informer, 2);
+            Assert.assertEquals(1, lists.get());
+
+            events.add("{\"type\": \"DELETED\", \"object\": {\"metadata\": {\"name\": \"eap-app-1-43wra\", \"namespace\": \"dward\", \"resourceVersion\": \"2\"}}}");
+            waitForPods(informer, 1);
+
+            events.add("{\"type\": \"ADDED\", \"object\": {\"metadata\": {\"name\": \"eap-app-1-x7k2p\", \"namespace\": \"dward\", \"resourceVersion\": \"3\"},"
+                    + " \"spec\": {\"containers\": [{\"ports\": [{\"name\": \"ping\", \"containerPort\": 8888}]}]},"
+                    + " \"status\": {\"phase\": \"Running\", \"podIP\": \"127.0.0.3\"}}}");
+            waitForPods(informer, 2);
+
+            events.add("{\"type\": \"MODIFIED\", \"object\": {\"metadata\": {\"name\": \"eap-app-1-x7k2p\", \"namespace\": \"dward\", \"resourceVersion\": \"4\"},"
+                    + " \"spec\": {\"containers\": [{\"ports\": [{\"name\": \"ping\", \"containerPort\": 8888}]}]},"
+                    + " \"status\": {\"phase\": \"Succeeded\", \"podIP\": \"127.0.0.3\"}}}");
+            waitForPods(informer, 1);
+
+            // resourceVersion too old, relist
+            events.add("{\"type\": \"ERROR\", \"object\": {\"kind\": \"Status\", \"code\": 410, \"reason\": \"Expired\"}}");
+            waitForPods(informer, 2);
+            Assert.assertEquals(2, lists.get());
+        } finally {
+            informer.stop();
+        }
+        Assert.assertFalse(informer.isSynced());
+    }
+
+    private static void waitForPods(PodInformer informer, int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && (!informer.isSynced() || informer.getPods().size() != expected); i++) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(expected, informer.getPods().size());
+    }
+
+    private static class EventStream extends InputStream {
+        private final BlockingQueue<String> events;
+        private volatile boolean closed;
+        private byte[] current = new byte[0];
+        private int pos;
+
+        private EventStream(BlockingQueue<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0];
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (pos == current.length) {
+                String event = null;
+                while (event == null) {
+                    if (closed) {
+                        return -1;
+                    }
+                    try {
+                        event = events.poll(50, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException(e);
+                    }
+                }
+                current = (event + "\n").getBytes("UTF-8");
+                pos = 0;
+            }
+            int n = Math.min(len, current.length - pos);
+            System.arraycopy(current, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import java.net.Proxy;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Map;
 
 import org.jgroups.Address;
 import org.jgroups.Event;
@@ -42,11 +43,15 @@ import org.jgroups.util.Util;
 import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
+import org.openshift.ping.common.RetryPolicy;
 import org.openshift.ping.common.compatibility.CompatibilityException;
 import org.openshift.ping.common.compatibility.CompatibilityUtils;
 import org.openshift.ping.common.server.Server;
+import org.openshift.ping.common.stream.StreamProvider;
 import org.openshift.ping.kube.Client;
+import org.openshift.ping.kube.HedgedRequests;
 import org.openshift.ping.kube.KubePing;
+import org.openshift.ping.kube.PodListReader;
 
 /**
  * @author <a href="mailto:ales.justin@jboss.org">Ales Justin</a>
@@ -152,7 +157,8 @@ public abstract class ServerTestBase extends TestBase {
         }
 
         @Override
-        protected Client getClient() {
+        protected Client createClient(String masterUrl, Map<String, String> headers, int connectTimeout, int readTimeout, RetryPolicy retryPolicy,
+                StreamProvider streamProvider, PodListReader podListReader, HedgedRequests hedgedRequests) {
             return new TestClient();
         }
     }
@@ -24,6 +24,7 @@ import org.jgroups.JChannel;
 import org.jgroups.Message;
 import org.jgroups.ReceiverAdapter;
 import org.jgroups.protocols.TCP;
+import org.jgroups.protocols.TP;
 import org.jgroups.protocols.pbcast.GMS;
 import org.jgroups.protocols.pbcast.NAKACK2;
 import org.jgroups.protocols.pbcast.STABLE;
@@ -57,6 +58,10 @@ public abstract class TestBase {
         return NUM;
     }
 
+    protected TP createTransport(int i) throws Exception {
+        return (TP) new TCP().setValue("bind_addr", InetAddress.getLoopbackAddress());
+    }
+
     @Before
     public void setUp() throws Exception {
         channels = new JChannel[getNum()];
@@ -74,7 +79,7 @@ public abstract class TestBase {
             }
 
             channels[i] = new JChannel(
-                new TCP().setValue("bind_addr", InetAddress.getLoopbackAddress()),
+                createTransport(i),
                 ping,
                 new NAKACK2(),
                 unicastProtocol,
@@ -18,38 +18,55 @@ package org.openshift.ping.kube.test;
 
 import static org.openshift.ping.common.Utils.readFileToString;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.jboss.dmr.ModelNode;
 import org.openshift.ping.kube.Client;
+import org.openshift.ping.kube.PodListReader;
 
 /**
  * @author <a href="mailto:ales.justin@jboss.org">Ales Justin</a>
  */
 public class TestClient extends Client {
-    private static final Map<String, String> OPS = new HashMap<>();
+    private final Map<String, String> ops = new HashMap<>();
 
-    static {
+    public TestClient() {
+        this("/pods.json", true);
+    }
+
+    public TestClient(String podsResource, boolean streamingParser) {
+        super(null, null, 0, 0, 0, 0, null, streamingParser);
+        load(podsResource);
+    }
+
+    public TestClient(String podsResource, PodListReader podListReader) {
+        super(null, null, 0, 0, 0, 0, null, podListReader);
+        load(podsResource);
+    }
+
+    private void load(String podsResource) {
         try {
-            String json = readFileToString(new File(TestClient.class.getResource("/pods.json").toURI()));
-            OPS.put("pods", json);
+            String json = readFileToString(new File(TestClient.class.getResource(podsResource).toURI()));
+            ops.put("pods", json);
         } catch (Throwable t) {
             t.printStackTrace();
         }
     }
 
-    public TestClient() {
-        super(null, null, 0, 0, 0, 0, null);
-    }
-
     @Override
-    protected ModelNode getNode(String op, String namespace, String labels) throws Exception {
-        String value = OPS.get(op);
+    protected InputStream getStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+        String value = ops.get(op);
         if (value == null) {
             throw new IllegalStateException("No such op: " + op);
         }
-        return ModelNode.fromJSONString(value);
+        return new ByteArrayInputStream(value.getBytes("UTF-8"));
+    }
+
+    @Override
+    protected InputStream getListStream(String op, String namespace, String labels, String fields, String... params) throws Exception {
+        return getStream(op, namespace, labels, fields, params);
     }
 }